@@ -0,0 +1,27 @@
+package com.practice.lottery.config;
+
+import com.practice.lottery.service.DrawRandomSource;
+import com.practice.lottery.service.SeededDrawRandomSource;
+import com.practice.lottery.service.ThreadLocalDrawRandomSource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Slf4j
+@Configuration
+public class DrawRandomConfig {
+
+    /**
+     * Per-thread generator by default, seeded reproducible mode when lottery.draw.random-seed is set
+     */
+    @Bean
+    public DrawRandomSource drawRandomSource(LotteryProperties lotteryProperties) {
+        Long seed = lotteryProperties.getDraw().getRandomSeed();
+        if (seed == null) {
+            return new ThreadLocalDrawRandomSource();
+        }
+
+        log.warn("Seeded draw random source enabled, draw outcomes are reproducible from seed {}", seed);
+        return new SeededDrawRandomSource(seed);
+    }
+}
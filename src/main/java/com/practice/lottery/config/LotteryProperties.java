@@ -0,0 +1,379 @@
+package com.practice.lottery.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "lottery")
+public class LotteryProperties {
+
+    private Draw draw = new Draw();
+    private NearCache nearCache = new NearCache();
+    private QuotaLease quotaLease = new QuotaLease();
+    private Counter counter = new Counter();
+    private InitLock initLock = new InitLock();
+    private SoldOut soldOut = new SoldOut();
+    private QuotaPreload quotaPreload = new QuotaPreload();
+    private Eligibility eligibility = new Eligibility();
+    private WinWriter winWriter = new WinWriter();
+    private WinJournal winJournal = new WinJournal();
+    private QuotaSync quotaSync = new QuotaSync();
+    private Reconcile reconcile = new Reconcile();
+    private EmergencySync emergencySync = new EmergencySync();
+    private RecentWins recentWins = new RecentWins();
+    private Archive archive = new Archive();
+    private WinRecordPartition winRecordPartition = new WinRecordPartition();
+    private PrizeRates prizeRates = new PrizeRates();
+    private ConfigOutbox configOutbox = new ConfigOutbox();
+    private LegacyKeys legacyKeys = new LegacyKeys();
+
+    @Data
+    public static class Draw {
+        /**
+         * Run the whole draw (active check, quota, prize selection, stock) in one Redis script
+         */
+        private boolean scriptEnabled = false;
+
+        /**
+         * When set, every draw's random value is derived from (seed, eventId, userId, draw sequence)
+         * so outcomes can be replayed. Leave empty in production.
+         */
+        private Long randomSeed;
+    }
+
+    @Data
+    public static class NearCache {
+        /**
+         * Max number of events kept in the in-process config cache
+         */
+        private int maxEvents = 1000;
+
+        /**
+         * Max age of a cached event config, in case an invalidation message is lost
+         */
+        private Duration ttl = Duration.ofSeconds(60);
+    }
+
+    @Data
+    public static class QuotaLease {
+        /**
+         * Serve event quota from per-node leased blocks instead of the shared remain counter
+         */
+        private boolean enabled = false;
+
+        /**
+         * Units of event quota leased from Redis at a time
+         */
+        private int blockSize = 500;
+
+        /**
+         * Unused units of a lease go back to Redis after this long
+         */
+        private Duration ttl = Duration.ofSeconds(30);
+
+        /**
+         * How often units held by this node are reported to Redis and expired leases are returned
+         */
+        private Duration reportInterval = Duration.ofSeconds(5);
+    }
+
+    @Data
+    public static class Counter {
+        /**
+         * Number of Redis keys each prize stock / event remain counter is split into, 1 keeps a single key
+         * Only the per-step draw supports more than 1, the draw and lease scripts need single keys
+         */
+        private int shards = 1;
+    }
+
+    @Data
+    public static class InitLock {
+        /**
+         * How long a node waits for another node to load an event from database before loading it itself
+         */
+        private Duration waitTime = Duration.ofSeconds(5);
+    }
+
+    @Data
+    public static class SoldOut {
+        /**
+         * Max age of a local sold-out / exhausted-user flag, in case an invalidation message is lost
+         */
+        private Duration ttl = Duration.ofSeconds(60);
+
+        /**
+         * Max number of exhausted users remembered per event on one node
+         */
+        private int maxExhaustedUsers = 100_000;
+    }
+
+    @Data
+    public static class QuotaPreload {
+        /**
+         * Load all user quotas of an event into Redis when it is activated or refreshed
+         */
+        private boolean enabled = true;
+
+        /**
+         * Redis commands sent per pipelined batch
+         */
+        private int batchSize = 1000;
+    }
+
+    @Data
+    public static class Eligibility {
+        /**
+         * Build a Bloom filter of users with quota during preload and reject others before the database
+         */
+        private boolean enabled = true;
+
+        /**
+         * Bloom filter false positive rate, false positives just fall through to the database
+         */
+        private double falseProbability = 0.001;
+
+        /**
+         * Filters of active events are rebuilt this often, picking up quota granted outside the app
+         */
+        private Duration rebuildInterval = Duration.ofMinutes(10);
+
+        /**
+         * How long a user missing from the filter and from the database is rejected without a query
+         */
+        private Duration negativeTtl = Duration.ofSeconds(60);
+
+        /**
+         * How long a replaced filter stays readable after a rebuild is published
+         */
+        private Duration oldFilterTtl = Duration.ofSeconds(60);
+    }
+
+    @Data
+    public static class WinWriter {
+        /**
+         * Group-commit win records from an in-memory queue instead of one transaction per win
+         */
+        private boolean enabled = true;
+
+        /**
+         * Wins waiting for the writer, more than this falls back to one async save per win
+         */
+        private int queueCapacity = 100_000;
+
+        /**
+         * Max records per JDBC batch
+         */
+        private int batchSize = 500;
+
+        /**
+         * Max time a win waits in the queue before its batch is written
+         */
+        private Duration flushInterval = Duration.ofMillis(200);
+
+        private Journal journal = new Journal();
+
+        @Data
+        public static class Journal {
+            /**
+             * Append queued wins to a memory-mapped local journal, replayed on startup after a crash
+             */
+            private boolean enabled = false;
+
+            /**
+             * Directory of the journal segments and checkpoint file
+             */
+            private String directory = "win-journal";
+
+            /**
+             * Records per segment file (128 bytes each)
+             */
+            private int segmentRecords = 100_000;
+        }
+    }
+
+    @Data
+    public static class WinJournal {
+        /**
+         * Append wins to a per-event Redis Stream inside the draw script, persisted by a consumer group
+         */
+        private boolean enabled = false;
+
+        /**
+         * Consumer group shared by all nodes
+         */
+        private String consumerGroup = "win-record-writers";
+
+        /**
+         * Max entries read and written per batch
+         */
+        private int batchSize = 500;
+
+        /**
+         * Delay between journal polls
+         */
+        private Duration pollInterval = Duration.ofSeconds(1);
+
+        /**
+         * Pending entries idle this long are taken over from the consumer that read them
+         */
+        private Duration claimIdle = Duration.ofSeconds(60);
+    }
+
+    @Data
+    public static class QuotaSync {
+        /**
+         * How often chances of users that drew are written back to user_lottery_quota
+         */
+        private Duration interval = Duration.ofSeconds(5);
+
+        /**
+         * Users popped from the dirty set per MGET / JDBC batch
+         */
+        private int batchSize = 1000;
+    }
+
+    @Data
+    public static class Reconcile {
+        /**
+         * Periodically write event remain amount and prize stocks of active events back to database
+         */
+        private boolean enabled = true;
+
+        /**
+         * Upper bound on how far lottery_event / lottery_prize lag the Redis counters
+         */
+        private Duration interval = Duration.ofSeconds(30);
+    }
+
+    @Data
+    public static class EmergencySync {
+        /**
+         * An event's emergency sync starts once draws stopped failing for this long
+         */
+        private Duration debounce = Duration.ofSeconds(2);
+
+        /**
+         * Upper bound between the first failing draw and its sync, while draws keep failing
+         */
+        private Duration maxDelay = Duration.ofSeconds(10);
+
+        /**
+         * Threads running emergency syncs; one event never has more than one sync at a time
+         */
+        private int threads = 2;
+    }
+
+    @Data
+    public static class RecentWins {
+        /**
+         * Keep each user's latest wins in Redis and serve the first history page from there
+         */
+        private boolean enabled = true;
+
+        /**
+         * Wins kept per user, first pages up to this size can be served without the database
+         */
+        private int size = 50;
+
+        /**
+         * Idle users' lists expire after this long
+         */
+        private Duration ttl = Duration.ofDays(7);
+    }
+
+    @Data
+    public static class Archive {
+        /**
+         * Move win records of ended events out of MySQL into compressed files
+         */
+        private boolean enabled = false;
+
+        /**
+         * Archive directory, shared between nodes in a cluster
+         */
+        private String directory = "win-archive";
+
+        /**
+         * Confirms the directory is shared by all nodes (or there is a single node), required to enable the archive
+         */
+        private boolean sharedDirectory = false;
+
+        /**
+         * Events inactive for longer than this are archived
+         */
+        private Duration afterEnded = Duration.ofDays(7);
+
+        /**
+         * How often ended events are looked for
+         */
+        private Duration interval = Duration.ofHours(1);
+
+        /**
+         * Records per gzip block, a user's lookup decompresses whole blocks
+         */
+        private int blockRecords = 5000;
+
+        /**
+         * Archived rows deleted from win_record per statement
+         */
+        private int deleteBatchSize = 5000;
+    }
+
+    @Data
+    public static class WinRecordPartition {
+        /**
+         * Add monthly partitions to win_record ahead of time, when the table is partitioned
+         */
+        private boolean enabled = true;
+
+        /**
+         * Months after the current one that get their partition in advance
+         */
+        private int monthsAhead = 2;
+
+        private Duration checkInterval = Duration.ofHours(6);
+    }
+
+    @Data
+    public static class PrizeRates {
+        /**
+         * How long a replaced prize rate version stays readable after a new one is published
+         */
+        private Duration oldVersionTtl = Duration.ofSeconds(60);
+    }
+
+    @Data
+    public static class ConfigOutbox {
+        /**
+         * Fallback poll for config_outbox rows not relayed right after their commit
+         */
+        private Duration pollInterval = Duration.ofSeconds(5);
+
+        /**
+         * Outbox rows read, and processed rows deleted, per round trip
+         */
+        private int batchSize = 500;
+
+        /**
+         * How long relayed rows are kept before being deleted
+         */
+        private Duration retention = Duration.ofDays(1);
+    }
+
+    @Data
+    public static class LegacyKeys {
+        /**
+         * Move event keys without the {eventId} hash tag to their tagged names before serving, once per Redis
+         */
+        private boolean migrateOnStartup = true;
+
+        /**
+         * Keys per SCAN round trip while looking for them
+         */
+        private int scanCount = 1000;
+    }
+}
@@ -4,13 +4,25 @@ import com.practice.lottery.controller.request.LotteryUpdateRequest;
 import com.practice.lottery.controller.request.UpdatePrizeRateRequest;
 import com.practice.lottery.controller.response.LotteryEventResponse;
 import com.practice.lottery.controller.response.LotteryStatusResponse;
+import com.practice.lottery.controller.response.WinStatsResponse;
 import com.practice.lottery.dto.ApiResponse;
+import com.practice.lottery.exception.LotteryException;
+import com.practice.lottery.service.EmergencySyncCoordinator;
 import com.practice.lottery.service.LotteryManagementService;
+import com.practice.lottery.service.WinRecordExportService;
+import com.practice.lottery.service.WinStatsService;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
 import java.util.List;
 import java.util.Map;
 
@@ -20,6 +32,9 @@ import java.util.Map;
 @RequiredArgsConstructor
 public class AdminController {
     private final LotteryManagementService lotteryManagementService;
+    private final EmergencySyncCoordinator emergencySyncCoordinator;
+    private final WinRecordExportService winRecordExportService;
+    private final WinStatsService winStatsService;
 
 
     /**
@@ -117,6 +132,7 @@ public class AdminController {
 
     /**
      * Get lottery event status with all prize rates and stocks
+     * Sent with an ETag; a poll with a matching If-None-Match gets 304 Not Modified without a body
      */
     @GetMapping("/event/{eventId}/status")
     public ResponseEntity<ApiResponse<LotteryStatusResponse>> getLotteryStatus(
@@ -124,8 +140,87 @@ public class AdminController {
     ) {
         LotteryStatusResponse status = lotteryManagementService.getLotteryStatus(eventId);
 
+        // Conditional request is answered by Spring MVC from the ETag header
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.noCache())
+                .eTag(lotteryManagementService.getStatusETag(status))
+                .body(ApiResponse.success("Lottery status retrieved successfully", status));
+    }
+
+    /**
+     * Export all win records of an event as CSV or NDJSON, streamed from the database
+     */
+    @GetMapping("/event/{eventId}/win-records/export")
+    public ResponseEntity<StreamingResponseBody> exportWinRecords(
+            @PathVariable Long eventId,
+            @RequestParam(name = "format", defaultValue = "ndjson") String format
+    ) {
+        WinRecordExportService.ExportFormat exportFormat = parseExportFormat(format);
+        // Fail before the response is committed if the event does not exist
+        winRecordExportService.verifyEventExists(eventId);
+
+        StreamingResponseBody body = out -> winRecordExportService.exportWinRecords(eventId, exportFormat, out);
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(exportFormat.getContentType()))
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        "attachment; filename=\"win-records-" + eventId + "." + exportFormat.getExtension() + "\"")
+                .body(body);
+    }
+
+    private WinRecordExportService.ExportFormat parseExportFormat(String format) {
+        try {
+            return WinRecordExportService.ExportFormat.valueOf(format.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new LotteryException("Unsupported export format: " + format);
+        }
+    }
+
+    /**
+     * Wins per prize per hour from the rollup table, defaults to the last 24 hours
+     */
+    @GetMapping("/event/{eventId}/win-stats")
+    public ResponseEntity<ApiResponse<List<WinStatsResponse>>> getWinStats(
+            @PathVariable Long eventId,
+            @RequestParam(name = "from", required = false)
+            @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(name = "to", required = false)
+            @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to
+    ) {
+        LocalDateTime end = to != null ? to : LocalDateTime.now().truncatedTo(ChronoUnit.HOURS).plusHours(1);
+        LocalDateTime start = from != null ? from : end.minusHours(24);
+        List<WinStatsResponse> stats = winStatsService.getHourlyWinStats(eventId, start, end);
+
+        return ResponseEntity.ok(
+                ApiResponse.success("Win stats retrieved successfully", stats)
+        );
+    }
+
+    /**
+     * Recount the win stats of an event from win_record
+     */
+    @PostMapping("/event/{eventId}/win-stats/rebuild")
+    public ResponseEntity<ApiResponse<Map<String, Object>>> rebuildWinStats(
+            @PathVariable Long eventId
+    ) {
+        int buckets = winStatsService.rebuildWinStats(eventId);
+
+        Map<String, Object> data = Map.of(
+                "event_id", eventId,
+                "buckets", buckets
+        );
+
+        return ResponseEntity.ok(
+                ApiResponse.success("Win stats rebuilt successfully", data)
+        );
+    }
+
+    /**
+     * Emergency sync counters: triggers, coalesced (suppressed) triggers, syncs run and failed
+     */
+    @GetMapping("/emergency-sync/stats")
+    public ResponseEntity<ApiResponse<Map<String, Object>>> getEmergencySyncStats() {
         return ResponseEntity.ok(
-                ApiResponse.success("Lottery status retrieved successfully", status)
+                ApiResponse.success("Emergency sync stats retrieved successfully", emergencySyncCoordinator.getStats())
         );
     }
 }
\ No newline at end of file
@@ -1,5 +1,6 @@
 package com.practice.lottery.controller;
 
+import com.practice.lottery.controller.response.WinRecordPageResponse;
 import com.practice.lottery.controller.response.WinRecordResponse;
 import com.practice.lottery.dao.entity.User;
 import com.practice.lottery.dto.ApiResponse;
@@ -7,6 +8,7 @@ import com.practice.lottery.service.LotteryService;
 import com.practice.lottery.service.LotterySyncService;
 import com.practice.lottery.service.WinRecordService;
 import jakarta.validation.Valid;
+import jakarta.validation.constraints.Max;
 import jakarta.validation.constraints.Min;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.ResponseEntity;
@@ -41,7 +43,7 @@ public class UserController {
     ) {
         User user = (User) auth.getPrincipal();
         String result = lotteryService.drawRedis(eventId, user.getId(), true);
-        lotterySyncService.syncUserQuota(eventId, user.getId());
+        lotterySyncService.markUserQuotaDirty(eventId, user.getId());
         Map<String, Object> data = Map.of(
                 "prize", result,
                 "is_winner", !"Miss".equals(result)
@@ -59,10 +61,11 @@ public class UserController {
             @RequestParam(name ="times") @Valid @Min(value = 1, message = "times must be greater than 0") Integer times
             ) {
         User user = (User) auth.getPrincipal();
+        List<String> results = lotteryService.drawBatch(eventId, user.getId(), times, true);
+        lotterySyncService.markUserQuotaDirty(eventId, user.getId());
+
         List<Object> hitList = new ArrayList<>();
-        for (int i = 0 ; i<times;i++) {
-            String result = lotteryService.drawRedis(eventId, user.getId(), true);
-            lotterySyncService.syncUserQuota(eventId, user.getId());
+        for (String result : results) {
             Map<String, Object> data = Map.of(
                     "prize", result,
                     "is_winner", !"Miss".equals(result)
@@ -89,4 +92,22 @@ public class UserController {
                 ApiResponse.success("Win records retrieved successfully", records)
         );
     }
+
+    /**
+     * Get win records for a user one page at a time, newest first
+     */
+    @GetMapping("/my-records/page")
+    public ResponseEntity<ApiResponse<WinRecordPageResponse>> getMyWinRecordPage(
+            Authentication auth,
+            @RequestParam(name = "cursor", required = false) String cursor,
+            @RequestParam(name = "size", defaultValue = "20") @Valid
+            @Min(value = 1, message = "size must be greater than 0")
+            @Max(value = 100, message = "size must not exceed 100") Integer size
+    ) {
+        User user = (User) auth.getPrincipal();
+        WinRecordPageResponse page = winRecordService.getUserWinRecordPage(user.getId(), cursor, size);
+        return ResponseEntity.ok(
+                ApiResponse.success("Win records retrieved successfully", page)
+        );
+    }
 }
\ No newline at end of file
@@ -8,6 +8,7 @@ import com.fasterxml.jackson.databind.PropertyNamingStrategies;
 import com.fasterxml.jackson.databind.annotation.JsonNaming;
 
 import java.math.BigDecimal;
+import java.time.LocalDateTime;
 import java.util.List;
 
 @Data
@@ -22,6 +23,8 @@ public class LotteryStatusResponse {
     private Long remainAmount;
     private BigDecimal totalRate;
     private List<PrizeInfo> prizes;
+    // Redis state up to this time is reflected in the database
+    private LocalDateTime lastSyncedAt;
 
     @Data
     @Builder
@@ -0,0 +1,22 @@
+package com.practice.lottery.controller.response;
+
+import com.fasterxml.jackson.databind.PropertyNamingStrategies;
+import com.fasterxml.jackson.databind.annotation.JsonNaming;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonNaming(PropertyNamingStrategies.SnakeCaseStrategy.class)
+public class WinRecordPageResponse {
+    private List<WinRecordResponse> records;
+    private Boolean hasMore;
+    // Pass as cursor to get the next page, null on the last page
+    private String nextCursor;
+}
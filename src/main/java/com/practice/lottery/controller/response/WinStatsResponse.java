@@ -0,0 +1,23 @@
+package com.practice.lottery.controller.response;
+
+import com.fasterxml.jackson.databind.PropertyNamingStrategies;
+import com.fasterxml.jackson.databind.annotation.JsonNaming;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonNaming(PropertyNamingStrategies.SnakeCaseStrategy.class)
+public class WinStatsResponse {
+    private Long prizeId;
+    private String prizeName;
+    // Start of the hour the wins fall in
+    private LocalDateTime bucketStart;
+    private Long winCount;
+}
@@ -1,14 +1,18 @@
 package com.practice.lottery.dao.entity;
 
+import com.practice.lottery.exception.LotteryException;
 import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.PrePersist;
+import jakarta.persistence.PreUpdate;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 
 @Data
@@ -16,6 +20,11 @@ import java.time.LocalDateTime;
 @NoArgsConstructor
 @Entity(name = "lottery_prize")
 public class LotteryPrize {
+    /**
+     * Longest prize name in UTF-8 bytes, a win must fit one win record journal slot
+     */
+    public static final int MAX_NAME_BYTES = 97;
+
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
@@ -31,4 +40,12 @@ public class LotteryPrize {
     private LocalDateTime createdTime;
 
     private LocalDateTime updatedTime;
+
+    @PrePersist
+    @PreUpdate
+    void validateName() {
+        if (name != null && name.getBytes(StandardCharsets.UTF_8).length > MAX_NAME_BYTES) {
+            throw new LotteryException("Prize name must be at most " + MAX_NAME_BYTES + " bytes: " + name);
+        }
+    }
 }
@@ -29,4 +29,8 @@ public class WinRecord {
     private Integer remainPrizeAmount;
 
     private LocalDateTime createdTime;
+
+    // eventId:streamEntryId from the Redis win journal or local:{node}:{sequence} from the local journal,
+    // guards against a redelivered or replayed entry
+    private String journalEntryId;
 }
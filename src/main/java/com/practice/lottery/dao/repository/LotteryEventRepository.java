@@ -3,5 +3,12 @@ package com.practice.lottery.dao.repository;
 import com.practice.lottery.dao.entity.LotteryEvent;
 import org.springframework.data.jpa.repository.JpaRepository;
 
+import java.time.LocalDateTime;
+import java.util.List;
+
 public interface LotteryEventRepository extends JpaRepository<LotteryEvent, Long > {
+
+    List<LotteryEvent> findByIsActiveTrue();
+
+    List<LotteryEvent> findByIsActiveFalseAndUpdatedTimeBefore(LocalDateTime updatedTime);
 }
@@ -1,11 +1,51 @@
 package com.practice.lottery.dao.repository;
 
+import com.practice.lottery.controller.response.WinRecordResponse;
 import com.practice.lottery.dao.entity.WinRecord;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 public interface WinRecordRepository extends JpaRepository<WinRecord, Long> {
 
+    // Event and prize names joined in the same query instead of two lookups per record
+    String SELECT_WIN_RECORD_RESPONSE = "SELECT new com.practice.lottery.controller.response.WinRecordResponse("
+            + "w.id, w.lotteryEventId, COALESCE(e.name, 'Unknown Event'), w.uid, w.drawPrizeId, "
+            + "COALESCE(p.name, 'Unknown Prize'), w.remainPrizeAmount, w.createdTime) "
+            + "FROM win_record w "
+            + "LEFT JOIN lottery_event e ON e.id = w.lotteryEventId "
+            + "LEFT JOIN lottery_prize p ON p.id = w.drawPrizeId ";
+
     List<WinRecord> findByUid(Long uid);
+
+    boolean existsByUidAndCreatedTimeBefore(Long uid, LocalDateTime createdTime);
+
+    @Query(SELECT_WIN_RECORD_RESPONSE
+            + "WHERE w.uid = :uid ORDER BY w.createdTime DESC, w.id DESC")
+    List<WinRecordResponse> findResponsesByUid(@Param("uid") Long uid);
+
+    /**
+     * First page, newest first
+     */
+    @Query(SELECT_WIN_RECORD_RESPONSE
+            + "WHERE w.uid = :uid ORDER BY w.createdTime DESC, w.id DESC")
+    List<WinRecordResponse> findResponsePageByUid(@Param("uid") Long uid, Pageable pageable);
+
+    /**
+     * Next page after the last record of the previous one, keyset on (createdTime, id)
+     */
+    @Query(SELECT_WIN_RECORD_RESPONSE
+            + "WHERE w.uid = :uid "
+            + "AND (w.createdTime < :createdTime OR (w.createdTime = :createdTime AND w.id < :id)) "
+            + "ORDER BY w.createdTime DESC, w.id DESC")
+    List<WinRecordResponse> findResponsePageByUidBefore(
+            @Param("uid") Long uid,
+            @Param("createdTime") LocalDateTime createdTime,
+            @Param("id") Long id,
+            Pageable pageable
+    );
 }
@@ -0,0 +1,54 @@
+package com.practice.lottery.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+
+/**
+ * Outbox of admin config changes that still have to reach Redis (config_outbox)
+ * <p>
+ * Rows are inserted in the admin transaction itself, so a rolled back change never reaches Redis and a
+ * committed one always does: ConfigOutboxRelay applies them after commit. A row only names what changed;
+ * the relay reads the committed values from the database, which makes applying a row twice harmless.
+ */
+@Component
+@RequiredArgsConstructor
+public class ConfigOutbox {
+    private final JdbcTemplate jdbcTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+
+    private static final String INSERT_OUTBOX =
+            "INSERT INTO config_outbox (lottery_event_id, change_type, created_time) VALUES (?, ?, ?)";
+
+    public enum ChangeType {
+        /**
+         * Prize rates of the event, republished as a whole from lottery_prize
+         */
+        PRIZE_RATES,
+        /**
+         * lottery_event.isActive
+         */
+        EVENT_ACTIVE
+    }
+
+    /**
+     * Raised for every appended row, handled by the relay once the transaction has committed
+     */
+    public record Appended(Long eventId, ChangeType changeType) {
+    }
+
+    /**
+     * Record a change; must run inside the transaction writing it
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void append(Long eventId, ChangeType changeType) {
+        jdbcTemplate.update(INSERT_OUTBOX, eventId, changeType.name(), Timestamp.valueOf(LocalDateTime.now()));
+        eventPublisher.publishEvent(new Appended(eventId, changeType));
+    }
+}
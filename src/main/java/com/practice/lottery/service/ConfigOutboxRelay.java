@@ -0,0 +1,162 @@
+package com.practice.lottery.service;
+
+import com.practice.lottery.config.LotteryProperties;
+import com.practice.lottery.dao.entity.LotteryEvent;
+import com.practice.lottery.dao.entity.LotteryPrize;
+import com.practice.lottery.dao.repository.LotteryEventRepository;
+import com.practice.lottery.dao.repository.LotteryPrizeRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Applies committed config_outbox rows to Redis
+ * <p>
+ * Runs right after an admin transaction commits and on a poll interval as fallback (crash between commit and
+ * relay, Redis down). Pending rows are read in batches and coalesced per event and change type, so ten rate
+ * edits of one event cost one rate publish. Rows whose change failed stay pending and are retried by the poll.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ConfigOutboxRelay {
+    private final JdbcTemplate jdbcTemplate;
+    private final RedissonClient redissonClient;
+    private final LotteryEventRepository lotteryEventRepository;
+    private final LotteryPrizeRepository lotteryPrizeRepository;
+    private final LotteryManagementService lotteryManagementService;
+    private final PrizeRateStore prizeRateStore;
+    private final EventConfigCache eventConfigCache;
+    private final LotteryProperties lotteryProperties;
+
+    private static final String RELAY_LOCK_KEY = "lottery:config:outbox:lock";
+
+    private static final String SELECT_PENDING =
+            "SELECT id, lottery_event_id, change_type FROM config_outbox "
+                    + "WHERE processed_time IS NULL ORDER BY id LIMIT ?";
+
+    private static final String MARK_PROCESSED =
+            "UPDATE config_outbox SET processed_time = ? WHERE id = ?";
+
+    private static final String DELETE_PROCESSED =
+            "DELETE FROM config_outbox WHERE processed_time < ? LIMIT ?";
+
+    @Async
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    public void onAppended(ConfigOutbox.Appended appended) {
+        relay();
+    }
+
+    @Scheduled(fixedDelayString = "#{@lotteryProperties.configOutbox.pollInterval.toMillis()}")
+    public void relayPending() {
+        relay();
+    }
+
+    /**
+     * Apply pending rows until none are left; skipped when another thread or node is relaying
+     */
+    public void relay() {
+        RLock lock = redissonClient.getLock(RELAY_LOCK_KEY);
+        if (!lock.tryLock()) {
+            return;
+        }
+        try {
+            int batchSize = lotteryProperties.getConfigOutbox().getBatchSize();
+            List<PendingChange> pending;
+            do {
+                pending = jdbcTemplate.query(SELECT_PENDING,
+                        (rs, rowNum) -> new PendingChange(
+                                rs.getLong("id"),
+                                rs.getLong("lottery_event_id"),
+                                ConfigOutbox.ChangeType.valueOf(rs.getString("change_type"))),
+                        batchSize);
+                if (!applyBatch(pending)) {
+                    break;
+                }
+            } while (pending.size() == batchSize);
+
+            purgeProcessed();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return false when some change failed, its rows are left for the next poll
+     */
+    private boolean applyBatch(List<PendingChange> pending) {
+        Map<ChangeKey, List<Long>> rowIdsByChange = new LinkedHashMap<>();
+        for (PendingChange change : pending) {
+            rowIdsByChange.computeIfAbsent(new ChangeKey(change.eventId(), change.changeType()), k -> new ArrayList<>())
+                    .add(change.id());
+        }
+
+        boolean allApplied = true;
+        List<Object[]> processed = new ArrayList<>();
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        for (Map.Entry<ChangeKey, List<Long>> entry : rowIdsByChange.entrySet()) {
+            ChangeKey change = entry.getKey();
+            try {
+                apply(change);
+                entry.getValue().forEach(id -> processed.add(new Object[]{now, id}));
+            } catch (Exception e) {
+                allApplied = false;
+                log.error("Failed to relay config change - eventId: {}, type: {}",
+                        change.eventId(), change.changeType(), e);
+            }
+        }
+
+        if (!processed.isEmpty()) {
+            jdbcTemplate.batchUpdate(MARK_PROCESSED, processed);
+        }
+        return allApplied;
+    }
+
+    private void apply(ChangeKey change) {
+        Long eventId = change.eventId();
+        switch (change.changeType()) {
+            case PRIZE_RATES -> {
+                Map<String, String> rates = new HashMap<>();
+                for (LotteryPrize prize : lotteryPrizeRepository.findByLotteryEventId(eventId)) {
+                    rates.put(prize.getName(), prize.getRate().toPlainString());
+                }
+                prizeRateStore.publish(eventId, rates);
+                eventConfigCache.publishInvalidation(eventId);
+            }
+            case EVENT_ACTIVE -> lotteryEventRepository.findById(eventId)
+                    .map(LotteryEvent::getIsActive)
+                    .ifPresent(isActive -> lotteryManagementService.updateEventActiveStatus(eventId, isActive));
+        }
+        log.info("Config change relayed - eventId: {}, type: {}", eventId, change.changeType());
+    }
+
+    private void purgeProcessed() {
+        LotteryProperties.ConfigOutbox config = lotteryProperties.getConfigOutbox();
+        Timestamp before = Timestamp.valueOf(LocalDateTime.now().minus(config.getRetention()));
+        int deleted;
+        do {
+            deleted = jdbcTemplate.update(DELETE_PROCESSED, before, config.getBatchSize());
+        } while (deleted == config.getBatchSize());
+    }
+
+    private record PendingChange(Long id, Long eventId, ConfigOutbox.ChangeType changeType) {
+    }
+
+    private record ChangeKey(Long eventId, ConfigOutbox.ChangeType changeType) {
+    }
+}
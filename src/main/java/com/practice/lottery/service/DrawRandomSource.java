@@ -0,0 +1,24 @@
+package com.practice.lottery.service;
+
+import java.util.random.RandomGenerator;
+
+/**
+ * Source of randomness for prize selection
+ * <p>
+ * A draw is identified by (eventId, userId, sequence), where sequence is the user's remaining chance
+ * right after the draw's quota decrement, so each of a user's draws in an event has its own sequence.
+ * Seeded implementations derive the random value from that identity, which makes every draw replayable.
+ */
+public interface DrawRandomSource {
+
+    /**
+     * Random generator for one in-JVM draw
+     */
+    RandomGenerator forDraw(long eventId, long userId, long sequence);
+
+    /**
+     * Seed passed to Redis draw scripts, in [0, 2147483646)
+     * The script combines it with the sequence it observes: see draw.lua
+     */
+    long scriptSeed(long eventId, long userId);
+}
@@ -0,0 +1,16 @@
+package com.practice.lottery.service;
+
+/**
+ * Outcome of a single draw
+ *
+ * @param prize     獎品名稱, "Miss" when nothing was won
+ * @param stockLeft 抽中後剩餘庫存, null for Miss
+ */
+public record DrawResult(String prize, Integer stockLeft) {
+
+    public static final String MISS = "Miss";
+
+    public boolean isWin() {
+        return !MISS.equals(prize);
+    }
+}
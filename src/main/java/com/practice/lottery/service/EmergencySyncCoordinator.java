@@ -0,0 +1,173 @@
+package com.practice.lottery.service;
+
+import com.practice.lottery.config.LotteryProperties;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Coalesces emergency syncs triggered by failing draws
+ * <p>
+ * A failing draw only records the trigger and returns. Per event at most one sync is queued or running:
+ * the sync starts once no new trigger came in for debounce (trailing edge), but never later than max-delay
+ * after the first trigger. Triggers arriving while a sync runs cause exactly one more run afterwards.
+ * The user's chance goes through the dirty-set flush instead of its own sync.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class EmergencySyncCoordinator {
+    private final LotterySyncService lotterySyncService;
+    private final LotteryProperties lotteryProperties;
+
+    private final Map<Long, EventSyncState> states = new ConcurrentHashMap<>();
+
+    private final AtomicLong triggered = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong executed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    private ScheduledExecutorService executor;
+
+    @PostConstruct
+    public void start() {
+        AtomicInteger threadNumber = new AtomicInteger();
+        executor = Executors.newScheduledThreadPool(lotteryProperties.getEmergencySync().getThreads(), runnable -> {
+            Thread thread = new Thread(runnable, "emergency-sync-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void stop() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Request a sync of the event after a draw error, never blocks the request thread
+     */
+    public void requestSync(Long eventId, Long userId, Exception error) {
+        triggered.incrementAndGet();
+        if (userId != null) {
+            lotterySyncService.markUserQuotaDirty(eventId, userId);
+        }
+
+        EventSyncState state = states.computeIfAbsent(eventId, id -> new EventSyncState());
+        long now = System.nanoTime();
+        synchronized (state) {
+            state.lastTriggerAt = now;
+            state.lastError = error.getMessage();
+            if (state.running) {
+                state.rerun = true;
+                coalesced.incrementAndGet();
+                return;
+            }
+            if (state.scheduled) {
+                coalesced.incrementAndGet();
+                return;
+            }
+            state.scheduled = true;
+            state.firstTriggerAt = now;
+        }
+
+        log.warn("Emergency sync scheduled for eventId: {}, error: {}", eventId, error.getMessage());
+        schedule(eventId, state, debounceNanos());
+    }
+
+    private void schedule(Long eventId, EventSyncState state, long delayNanos) {
+        executor.schedule(() -> runIfQuiet(eventId, state), delayNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private void runIfQuiet(Long eventId, EventSyncState state) {
+        String lastError;
+        synchronized (state) {
+            long now = System.nanoTime();
+            long quietNanos = now - state.lastTriggerAt;
+            long waitedNanos = now - state.firstTriggerAt;
+            long maxDelayNanos = lotteryProperties.getEmergencySync().getMaxDelay().toNanos();
+            if (quietNanos < debounceNanos() && waitedNanos < maxDelayNanos) {
+                // Still failing: push the sync back, bounded by max-delay
+                schedule(eventId, state,
+                        Math.min(debounceNanos() - quietNanos, maxDelayNanos - waitedNanos));
+                return;
+            }
+            state.scheduled = false;
+            state.running = true;
+            state.rerun = false;
+            lastError = state.lastError;
+        }
+
+        try {
+            executed.incrementAndGet();
+            log.error("Emergency sync running for eventId: {}, last error: {}", eventId, lastError);
+            lotterySyncService.syncLotteryDataToDatabase(eventId);
+        } catch (Exception e) {
+            failed.incrementAndGet();
+            // Don't rethrow: the scheduled reconcile catches up
+            log.error("Emergency sync failed for eventId: {}", eventId, e);
+        } finally {
+            boolean rerun;
+            synchronized (state) {
+                state.running = false;
+                rerun = state.rerun;
+                if (rerun) {
+                    state.rerun = false;
+                    state.scheduled = true;
+                    state.firstTriggerAt = System.nanoTime();
+                }
+            }
+            if (rerun) {
+                schedule(eventId, state, debounceNanos());
+            }
+        }
+    }
+
+    /**
+     * Counters since startup, for the admin endpoint
+     */
+    public Map<String, Object> getStats() {
+        long inFlight = states.values().stream()
+                .filter(state -> {
+                    synchronized (state) {
+                        return state.scheduled || state.running;
+                    }
+                })
+                .count();
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("triggered", triggered.get());
+        stats.put("coalesced", coalesced.get());
+        stats.put("executed", executed.get());
+        stats.put("failed", failed.get());
+        stats.put("events_pending", inFlight);
+        return stats;
+    }
+
+    private long debounceNanos() {
+        return lotteryProperties.getEmergencySync().getDebounce().toNanos();
+    }
+
+    /**
+     * Guarded by its own monitor
+     */
+    private static final class EventSyncState {
+        private boolean scheduled;
+        private boolean running;
+        private boolean rerun;
+        private long firstTriggerAt;
+        private long lastTriggerAt;
+        private String lastError;
+    }
+}
@@ -0,0 +1,24 @@
+package com.practice.lottery.service;
+
+import java.math.BigDecimal;
+
+/**
+ * Immutable snapshot of an event's draw configuration held by {@link EventConfigCache}
+ *
+ * @param eventId    活動ID
+ * @param active     活動是否啟用
+ * @param prizeTable  獎品與機率, compiled once per config load
+ * @param rateVersion 機率版本 key the prize table was read from (PrizeRateStore), null when no rates were loaded
+ * @param loadedAt    載入時間 (epoch millis), used for cache expiry
+ */
+public record EventConfig(
+        Long eventId,
+        boolean active,
+        PrizeTable prizeTable,
+        String rateVersion,
+        long loadedAt
+) {
+
+    public record Prize(String name, BigDecimal rate) {
+    }
+}
@@ -0,0 +1,160 @@
+package com.practice.lottery.service;
+
+import com.practice.lottery.config.LotteryProperties;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RTopic;
+import org.redisson.api.RedissonClient;
+import org.redisson.api.listener.BaseStatusListener;
+import org.redisson.client.codec.LongCodec;
+import org.springframework.stereotype.Component;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * In-process near-cache of per-event draw configuration (active flag + prize rates)
+ * Entries are dropped on every node through a Redis pub/sub topic whenever an admin changes the event,
+ * and expire after lottery.near-cache.ttl as a safety net for missed messages.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class EventConfigCache {
+    private final RedissonClient redissonClient;
+    private final LotteryProperties lotteryProperties;
+
+    private static final String CONFIG_INVALIDATE_TOPIC = "lottery:config:invalidate";
+
+    private final Map<Long, EventConfig> cache = new ConcurrentHashMap<>();
+    // Bumped before an entry is dropped, so a load that started earlier does not put stale config back
+    private final Map<Long, Long> generations = new ConcurrentHashMap<>();
+    private final AtomicLong clears = new AtomicLong();
+    private int messageListenerId;
+    private int statusListenerId;
+
+    // Other per-event local state that must be dropped together with the config
+    private final List<Consumer<Long>> invalidationListeners = new CopyOnWriteArrayList<>();
+
+    @PostConstruct
+    public void subscribe() {
+        RTopic topic = getTopic();
+        messageListenerId = topic.addListener(Long.class, (channel, eventId) -> {
+            log.info("Event config invalidated by topic, eventId: {}", eventId);
+            invalidateLocal(eventId);
+            notifyInvalidationListeners(eventId);
+        });
+
+        // Messages published while disconnected are lost, so start clean after (re)subscribe
+        statusListenerId = topic.addListener(new BaseStatusListener() {
+            @Override
+            public void onSubscribe(String channel) {
+                clears.incrementAndGet();
+                cache.clear();
+            }
+        });
+    }
+
+    @PreDestroy
+    public void unsubscribe() {
+        getTopic().removeListener(messageListenerId, statusListenerId);
+    }
+
+    /**
+     * Register a callback run on this node whenever an event is invalidated
+     * Runs on the pub/sub listener thread, so it must not block on Redis
+     */
+    public void addInvalidationListener(Consumer<Long> listener) {
+        invalidationListeners.add(listener);
+    }
+
+    /**
+     * Get cached config, loading it with the given loader on miss or expiry
+     * Concurrent misses of one event share a single load. A load overlapped by an invalidation of the event
+     * is returned to its caller but not cached, so the next read loads again.
+     */
+    public EventConfig get(Long eventId, Function<Long, EventConfig> loader) {
+        EventConfig config = cache.get(eventId);
+        if (config != null && !isExpired(config)) {
+            return config;
+        }
+
+        EventConfig[] loaded = new EventConfig[1];
+        config = cache.compute(eventId, (id, current) -> {
+            if (current != null && !isExpired(current)) {
+                return current;
+            }
+            long generation = generationOf(id);
+            loaded[0] = loader.apply(id);
+            return generationOf(id) == generation ? loaded[0] : null;
+        });
+        if (config == null) {
+            return loaded[0];
+        }
+        evictIfOversized();
+        return config;
+    }
+
+    /**
+     * Drop local entry only (this node)
+     * Waits for a load of the same event in progress, which then stays out of the cache.
+     */
+    public void invalidateLocal(Long eventId) {
+        generations.merge(eventId, 1L, Long::sum);
+        cache.remove(eventId);
+    }
+
+    /**
+     * Drop the entry on all nodes
+     * Called by LotteryManagementService after event config changes in Redis
+     */
+    public void publishInvalidation(Long eventId) {
+        invalidateLocal(eventId);
+        long receivers = getTopic().publish(eventId);
+        log.info("Published event config invalidation, eventId: {}, receivers: {}", eventId, receivers);
+    }
+
+    private void notifyInvalidationListeners(Long eventId) {
+        for (Consumer<Long> listener : invalidationListeners) {
+            try {
+                listener.accept(eventId);
+            } catch (Exception e) {
+                log.error("Event invalidation listener failed, eventId: {}", eventId, e);
+            }
+        }
+    }
+
+    // Includes resubscribes, which drop every entry at once
+    private long generationOf(Long eventId) {
+        return generations.getOrDefault(eventId, 0L) + clears.get();
+    }
+
+    private boolean isExpired(EventConfig config) {
+        long ttlMillis = lotteryProperties.getNearCache().getTtl().toMillis();
+        return System.currentTimeMillis() - config.loadedAt() > ttlMillis;
+    }
+
+    /**
+     * Remove the oldest loaded entries when the cache grows beyond max-events
+     */
+    private void evictIfOversized() {
+        int maxEvents = lotteryProperties.getNearCache().getMaxEvents();
+        while (cache.size() > maxEvents) {
+            cache.values().stream()
+                    .min(Comparator.comparingLong(EventConfig::loadedAt))
+                    .ifPresent(oldest -> cache.remove(oldest.eventId(), oldest));
+        }
+    }
+
+    private RTopic getTopic() {
+        return redissonClient.getTopic(CONFIG_INVALIDATE_TOPIC, LongCodec.INSTANCE);
+    }
+}
@@ -0,0 +1,145 @@
+package com.practice.lottery.service;
+
+import com.practice.lottery.config.LotteryProperties;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RBloomFilter;
+import org.redisson.api.RBucket;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-event Bloom filter of users holding a user_lottery_quota row
+ * <p>
+ * Checked before the per-user database lookup. The filter is rebuilt into a new key by the quota preload
+ * (and periodically for active events) and then swapped in through the pointer lottery:{eventId}:eligible,
+ * so draws never see a half-built filter. Quota granted after a build is not in the filter yet, so a miss
+ * is only a hint: the database decides once, a user found there is added to the filter and a user missing
+ * there is remembered in lottery:{eventId}:ineligible:{uid} for negative-ttl, so users without quota (bots,
+ * mis-routed clients) cost one MySQL query per negative-ttl at most.
+ * Without a built filter every user passes and the database decides as before.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class EventEligibilityFilter {
+    private final RedissonClient redissonClient;
+    private final LotteryProperties lotteryProperties;
+
+    private static final String ELIGIBLE_POINTER_KEY = "lottery:{%d}:eligible";
+    private static final String ELIGIBLE_FILTER_KEY = "lottery:{%d}:eligible:%d";
+    private static final String INELIGIBLE_USER_KEY = "lottery:{%d}:ineligible:%d";
+
+    public boolean isEnabled() {
+        return lotteryProperties.getEligibility().isEnabled();
+    }
+
+    /**
+     * False means the user had no quota row when the filter was built (or was added since)
+     */
+    public boolean mightBeEligible(Long eventId, Long userId) {
+        if (!isEnabled()) {
+            return true;
+        }
+
+        String filterName = getPointer(eventId).get();
+        if (filterName == null) {
+            return true;
+        }
+        return getFilter(filterName).contains(String.valueOf(userId));
+    }
+
+    /**
+     * Create an empty filter for a rebuild, not visible to draws until {@link #publish}
+     *
+     * @return name of the new filter
+     */
+    public String startRebuild(Long eventId, long expectedUsers) {
+        String filterName = String.format(ELIGIBLE_FILTER_KEY, eventId, System.currentTimeMillis());
+        getFilter(filterName).tryInit(
+                Math.max(expectedUsers, 1L),
+                lotteryProperties.getEligibility().getFalseProbability()
+        );
+        return filterName;
+    }
+
+    public void addAll(String filterName, Collection<Long> userIds) {
+        if (!userIds.isEmpty()) {
+            getFilter(filterName).add(userIds.stream().map(String::valueOf).toList());
+        }
+    }
+
+    /**
+     * Swap the rebuilt filter in, the previous one expires after old-filter-ttl
+     * Readers that fetched the old pointer just before, and users added to it meanwhile, still find it.
+     */
+    public void publish(Long eventId, String filterName) {
+        String previous = getPointer(eventId).getAndSet(filterName);
+        if (previous != null && !previous.equals(filterName)) {
+            getFilter(previous).expire(
+                    lotteryProperties.getEligibility().getOldFilterTtl().toMillis(), TimeUnit.MILLISECONDS);
+        }
+        log.info("Eligibility filter published - eventId: {}, filter: {}", eventId, filterName);
+    }
+
+    /**
+     * Whether the current filter was built within maxAge, so other nodes can skip a periodic rebuild
+     */
+    public boolean isBuiltWithin(Long eventId, Duration maxAge) {
+        String filterName = getPointer(eventId).get();
+        if (filterName == null) {
+            return false;
+        }
+        long builtAt = Long.parseLong(filterName.substring(filterName.lastIndexOf(':') + 1));
+        return System.currentTimeMillis() - builtAt < maxAge.toMillis();
+    }
+
+    /**
+     * A user missing from the filter was looked up in the database within negative-ttl and had no quota
+     */
+    public boolean isKnownIneligible(Long eventId, Long userId) {
+        return getIneligibleMarker(eventId, userId).isExists();
+    }
+
+    /**
+     * Remember a database miss for negative-ttl
+     */
+    public void markIneligible(Long eventId, Long userId) {
+        getIneligibleMarker(eventId, userId).set("1",
+                lotteryProperties.getEligibility().getNegativeTtl().toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Drop an unfinished rebuild
+     */
+    public void discard(String filterName) {
+        getFilter(filterName).delete();
+    }
+
+    /**
+     * Add a user to the current filter: quota granted after the filter was built, found in the database
+     */
+    public void addEligibleUser(Long eventId, Long userId) {
+        String filterName = getPointer(eventId).get();
+        if (filterName != null) {
+            getFilter(filterName).add(String.valueOf(userId));
+        }
+    }
+
+    private RBucket<String> getPointer(Long eventId) {
+        return redissonClient.getBucket(String.format(ELIGIBLE_POINTER_KEY, eventId), StringCodec.INSTANCE);
+    }
+
+    private RBucket<String> getIneligibleMarker(Long eventId, Long userId) {
+        return redissonClient.getBucket(String.format(INELIGIBLE_USER_KEY, eventId, userId), StringCodec.INSTANCE);
+    }
+
+    private RBloomFilter<String> getFilter(String filterName) {
+        return redissonClient.getBloomFilter(filterName, StringCodec.INSTANCE);
+    }
+}
@@ -0,0 +1,99 @@
+package com.practice.lottery.service;
+
+import com.practice.lottery.config.LotteryProperties;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Singleflight for cold-cache initialization from database
+ * <p>
+ * Threads of one node queue on a per-event striped lock, nodes queue on a Redisson lock
+ * lottery:{eventId}:init:{resource}:lock. Whoever gets through first loads from MySQL and writes Redis,
+ * everyone behind it re-reads Redis and finds the value, so one event is loaded by exactly one node.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class EventInitSingleflight {
+    private final RedissonClient redissonClient;
+    private final LotteryProperties lotteryProperties;
+
+    private static final String INIT_LOCK_KEY = "lottery:{%d}:init:%s:lock";
+    private static final int STRIPES = 64;
+
+    private final ReentrantLock[] stripes = createStripes();
+
+    /**
+     * Read a value from Redis, initializing it once across all nodes when missing
+     *
+     * @param eventId     活動ID
+     * @param resource    name of what is initialized (active, rates, remain), part of the lock key
+     * @param cached      reads the value from Redis, null when not initialized
+     * @param initializer loads from database and writes Redis, returns the value
+     */
+    public <T> T load(Long eventId, String resource, Supplier<T> cached, Supplier<T> initializer) {
+        T value = cached.get();
+        if (value != null) {
+            return value;
+        }
+
+        ReentrantLock localLock = stripes[Math.floorMod(eventId.hashCode(), STRIPES)];
+        localLock.lock();
+        try {
+            value = cached.get();
+            if (value != null) {
+                return value;
+            }
+            return loadWithDistributedLock(eventId, resource, cached, initializer);
+        } finally {
+            localLock.unlock();
+        }
+    }
+
+    private <T> T loadWithDistributedLock(Long eventId, String resource, Supplier<T> cached, Supplier<T> initializer) {
+        RLock lock = redissonClient.getLock(String.format(INIT_LOCK_KEY, eventId, resource));
+        long waitMillis = lotteryProperties.getInitLock().getWaitTime().toMillis();
+
+        boolean locked;
+        try {
+            locked = lock.tryLock(waitMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for event initialization", e);
+        }
+
+        try {
+            // Another node may have finished while we waited
+            T value = cached.get();
+            if (value != null) {
+                return value;
+            }
+
+            if (!locked) {
+                // Holder is stuck or slow, better to hit the database once more than fail the draw
+                log.warn("Initialization lock wait timed out, loading anyway - eventId: {}, resource: {}",
+                        eventId, resource);
+            }
+            return initializer.get();
+        } finally {
+            if (locked) {
+                lock.unlock();
+            }
+        }
+    }
+
+    private static ReentrantLock[] createStripes() {
+        ReentrantLock[] locks = new ReentrantLock[STRIPES];
+        for (int i = 0; i < STRIPES; i++) {
+            locks[i] = new ReentrantLock();
+        }
+        return locks;
+    }
+}
@@ -0,0 +1,304 @@
+package com.practice.lottery.service;
+
+import com.practice.lottery.config.LotteryProperties;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.BatchOptions;
+import org.redisson.api.RBatch;
+import org.redisson.api.RFuture;
+import org.redisson.api.RMap;
+import org.redisson.api.RScript;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-node lease of event quota (lottery.quota-lease.enabled)
+ * <p>
+ * Instead of decrementing lottery:{eventId}:remainAmount on every draw, each node takes blocks of quota
+ * from Redis and serves draws from a local counter. Units a node holds are tracked in
+ * lottery:{eventId}:remainAmount:leases (node id -> units), refreshed periodically, so the sync job can
+ * add them back when writing remainAmount to MySQL. Unused units are returned when the lease expires
+ * and on shutdown.
+ * <p>
+ * An admin reset of the remain amount bumps lottery:{eventId}:remainAmount:lease-epoch; units a node leased
+ * under an older epoch are void and are neither registered again nor given back.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class EventQuotaLeaseManager {
+    private final RedissonClient redissonClient;
+    private final RedisScriptExecutor redisScriptExecutor;
+    private final EventConfigCache eventConfigCache;
+    private final LotteryProperties lotteryProperties;
+
+    private static final String EVENT_REMAIN_KEY = "lottery:{%d}:remainAmount";
+    private static final String EVENT_LEASE_KEY = "lottery:{%d}:remainAmount:leases";
+    private static final String LEASE_EPOCH_KEY = "lottery:{%d}:remainAmount:lease-epoch";
+
+    private static final String LEASE_SCRIPT = "lease_quota";
+    private static final String RETURN_SCRIPT = "return_quota";
+    private static final String RESTORE_SCRIPT = "restore_quota";
+
+    private final String nodeId = UUID.randomUUID().toString();
+    private final Map<Long, Lease> leases = new ConcurrentHashMap<>();
+
+    public enum LeaseResult {
+        ACQUIRED,
+        EXHAUSTED,
+        NOT_INITIALIZED
+    }
+
+    /**
+     * Outcome of tryAcquire, lease is the one the units were taken from (null unless ACQUIRED)
+     */
+    public record Acquisition(LeaseResult result, Lease lease) {
+    }
+
+    @PostConstruct
+    public void registerInvalidationListener() {
+        // Admin reset of remain amount drops the lease hash, local units of a dropped lease are void
+        eventConfigCache.addInvalidationListener(this::verifyLease);
+    }
+
+    public boolean isEnabled() {
+        return lotteryProperties.getQuotaLease().isEnabled();
+    }
+
+    /**
+     * Take units of event quota from the local lease, leasing a new block from Redis when it runs out
+     */
+    public Acquisition tryAcquire(Long eventId, int units) {
+        Lease lease = leases.computeIfAbsent(eventId, id -> new Lease());
+        if (lease.take(units)) {
+            return new Acquisition(LeaseResult.ACQUIRED, lease);
+        }
+
+        synchronized (lease) {
+            if (lease.retired) {
+                // Returned or dropped meanwhile, continue with a fresh lease
+                return tryAcquire(eventId, units);
+            }
+            if (lease.take(units)) {
+                return new Acquisition(LeaseResult.ACQUIRED, lease);
+            }
+
+            long blockSize = Math.max(lotteryProperties.getQuotaLease().getBlockSize(), units);
+            List<Long> reply = redisScriptExecutor.execute(
+                    LEASE_SCRIPT,
+                    RScript.ReturnType.MULTI,
+                    List.of(
+                            String.format(EVENT_REMAIN_KEY, eventId),
+                            String.format(EVENT_LEASE_KEY, eventId),
+                            String.format(LEASE_EPOCH_KEY, eventId)
+                    ),
+                    nodeId,
+                    String.valueOf(lease.remaining.get()),
+                    String.valueOf(blockSize),
+                    String.valueOf(lease.epoch)
+            );
+
+            long granted = reply.get(0);
+            if (granted < 0) {
+                return new Acquisition(LeaseResult.NOT_INITIALIZED, null);
+            }
+            long epoch = reply.get(1);
+            if (lease.epoch != epoch) {
+                // Leased before an admin reset: the script did not register these units again, drop them
+                long dropped = lease.remaining.getAndSet(0);
+                if (dropped > 0) {
+                    log.info("Dropped void quota lease - eventId: {}, node: {}, units: {}", eventId, nodeId, dropped);
+                }
+                lease.epoch = epoch;
+            }
+            if (granted > 0) {
+                lease.remaining.addAndGet(granted);
+                lease.leasedAt = System.currentTimeMillis();
+                log.info("Leased event quota - eventId: {}, node: {}, granted: {}", eventId, nodeId, granted);
+            }
+
+            return lease.take(units)
+                    ? new Acquisition(LeaseResult.ACQUIRED, lease)
+                    : new Acquisition(LeaseResult.EXHAUSTED, null);
+        }
+    }
+
+    /**
+     * Give units taken from a lease back (draw rolled back)
+     * While the lease is live they go back into it. A lease returned meanwhile gives them straight back to
+     * Redis, unless an admin reset happened since; units of a lease voided by a reset are dropped.
+     */
+    public void release(Long eventId, Lease lease, int units) {
+        synchronized (lease) {
+            if (!lease.retired) {
+                lease.remaining.addAndGet(units);
+                return;
+            }
+            if (lease.voided) {
+                return;
+            }
+        }
+
+        Long restored = redisScriptExecutor.execute(
+                RESTORE_SCRIPT,
+                RScript.ReturnType.INTEGER,
+                List.of(String.format(EVENT_REMAIN_KEY, eventId), String.format(LEASE_EPOCH_KEY, eventId)),
+                String.valueOf(lease.epoch),
+                String.valueOf(units)
+        );
+        log.info("Released units of a returned quota lease - eventId: {}, units: {}, restored: {}",
+                eventId, units, restored == 1);
+    }
+
+    /**
+     * Units currently leased by all nodes but not yet drawn
+     */
+    public long getOutstandingUnits(Long eventId) {
+        return sumUnits(getLeaseMap(eventId).readAllValues());
+    }
+
+    /**
+     * Queue a read of the units leased by all nodes on a caller's batch
+     */
+    public RFuture<Collection<String>> readOutstandingUnitsAsync(RBatch batch, Long eventId) {
+        return batch.<String, String>getMap(String.format(EVENT_LEASE_KEY, eventId), StringCodec.INSTANCE)
+                .readAllValuesAsync();
+    }
+
+    public static long sumUnits(Collection<String> units) {
+        return units.stream().mapToLong(Long::parseLong).sum();
+    }
+
+    /**
+     * Forget all leases of an event
+     * Called when an admin sets the remain amount: leased units are not returned on top of the new value.
+     * The epoch bump and the hash delete are applied atomically, so no lease is registered in between.
+     */
+    public void resetLeases(Long eventId) {
+        RBatch batch = redissonClient.createBatch(BatchOptions.defaults()
+                .executionMode(BatchOptions.ExecutionMode.IN_MEMORY_ATOMIC));
+        batch.getAtomicLong(String.format(LEASE_EPOCH_KEY, eventId)).incrementAndGetAsync();
+        batch.getMap(String.format(EVENT_LEASE_KEY, eventId), StringCodec.INSTANCE).deleteAsync();
+        batch.execute();
+    }
+
+    /**
+     * Report units held locally, return unused units of expired leases
+     */
+    @Scheduled(fixedDelayString = "#{@lotteryProperties.quotaLease.reportInterval.toMillis()}")
+    public void maintainLeases() {
+        if (!isEnabled()) {
+            return;
+        }
+
+        long ttlMillis = lotteryProperties.getQuotaLease().getTtl().toMillis();
+        long now = System.currentTimeMillis();
+
+        leases.forEach((eventId, lease) -> {
+            try {
+                if (now - lease.leasedAt > ttlMillis) {
+                    returnLease(eventId, lease);
+                } else {
+                    // Drained leases report 0 too, the sync must not count units already drawn.
+                    // Only overwrite a registered lease, never recreate one dropped by an admin reset
+                    getLeaseMap(eventId).replace(nodeId, String.valueOf(lease.remaining.get()));
+                }
+            } catch (Exception e) {
+                log.error("Failed to maintain quota lease - eventId: {}", eventId, e);
+            }
+        });
+    }
+
+    @PreDestroy
+    public void returnAllLeases() {
+        leases.forEach((eventId, lease) -> {
+            try {
+                returnLease(eventId, lease);
+            } catch (Exception e) {
+                log.error("Failed to return quota lease on shutdown - eventId: {}", eventId, e);
+            }
+        });
+    }
+
+    private void returnLease(Long eventId, Lease lease) {
+        synchronized (lease) {
+            lease.retired = true;
+            long unused = lease.remaining.getAndSet(0);
+            redisScriptExecutor.execute(
+                    RETURN_SCRIPT,
+                    RScript.ReturnType.INTEGER,
+                    leaseKeys(eventId),
+                    nodeId,
+                    String.valueOf(unused)
+            );
+            leases.remove(eventId, lease);
+            log.info("Returned event quota lease - eventId: {}, node: {}, unused: {}", eventId, nodeId, unused);
+        }
+    }
+
+    private void verifyLease(Long eventId) {
+        Lease lease = leases.get(eventId);
+        if (lease == null || lease.remaining.get() <= 0) {
+            return;
+        }
+
+        getLeaseMap(eventId).containsKeyAsync(nodeId).thenAccept(registered -> {
+            if (!registered) {
+                synchronized (lease) {
+                    lease.retired = true;
+                    lease.voided = true;
+                    long dropped = lease.remaining.getAndSet(0);
+                    leases.remove(eventId, lease);
+                    log.info("Dropped void quota lease - eventId: {}, node: {}, units: {}",
+                            eventId, nodeId, dropped);
+                }
+            }
+        });
+    }
+
+    private List<Object> leaseKeys(Long eventId) {
+        return List.of(
+                String.format(EVENT_REMAIN_KEY, eventId),
+                String.format(EVENT_LEASE_KEY, eventId)
+        );
+    }
+
+    private RMap<String, String> getLeaseMap(Long eventId) {
+        return redissonClient.getMap(String.format(EVENT_LEASE_KEY, eventId), StringCodec.INSTANCE);
+    }
+
+    /**
+     * Local lease of one event
+     */
+    public static class Lease {
+        private final AtomicLong remaining = new AtomicLong();
+        private volatile long leasedAt = System.currentTimeMillis();
+        private volatile boolean retired = false;
+        // Retired by an admin reset rather than returned: units taken from it are void
+        private volatile boolean voided = false;
+        // Reset epoch the held units were leased under, -1 before the first grant
+        private volatile long epoch = -1;
+
+        boolean take(int units) {
+            long current;
+            do {
+                current = remaining.get();
+                if (current < units) {
+                    return false;
+                }
+            } while (!remaining.compareAndSet(current, current - units));
+            return true;
+        }
+    }
+}
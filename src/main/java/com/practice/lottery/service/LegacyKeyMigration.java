@@ -0,0 +1,149 @@
+package com.practice.lottery.service;
+
+import com.practice.lottery.config.LotteryProperties;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RBucket;
+import org.redisson.api.RLock;
+import org.redisson.api.RSet;
+import org.redisson.api.RType;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.ByteArrayCodec;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * One-time move of event keys written before they carried the {eventId} hash tag (lottery.legacy-keys)
+ * <p>
+ * Event keys were lottery:5:remainAmount and are now lottery:{5}:remainAmount. Counters left under the old
+ * names would be initialized again from MySQL, which lags behind Redis, and stock could be oversold. Before the
+ * node serves draws every lottery:{digits}:* key is moved to its new name with DUMP/RESTORE, as the two names may
+ * hash to different cluster slots, keeping its TTL. Key names stored as values (rate and eligibility pointers,
+ * members of lottery:wins:streams) are rewritten, old lock keys are dropped.
+ * The first node moves the keys under a lock while the others wait, a marker key skips the scan afterwards.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class LegacyKeyMigration {
+    private final RedissonClient redissonClient;
+    private final LotteryProperties lotteryProperties;
+
+    // SCAN pattern, narrowed down by LEGACY_KEY
+    private static final String LEGACY_KEY_PATTERN = "lottery:[0-9]*:*";
+    private static final Pattern LEGACY_KEY = Pattern.compile("^lottery:(\\d+):(.+)$");
+    private static final String TAGGED_KEY = "lottery:{%s}:%s";
+    private static final String LOCK_SUFFIX = ":lock";
+
+    private static final String MIGRATION_LOCK_KEY = "lottery:legacy-keys:lock";
+    private static final String MIGRATED_KEY = "lottery:legacy-keys:migrated";
+    private static final String WIN_STREAMS_KEY = "lottery:wins:streams";
+
+    @PostConstruct
+    public void migrate() {
+        LotteryProperties.LegacyKeys config = lotteryProperties.getLegacyKeys();
+        RBucket<String> migrated = redissonClient.getBucket(MIGRATED_KEY, StringCodec.INSTANCE);
+        if (!config.isMigrateOnStartup() || migrated.isExists()) {
+            return;
+        }
+
+        RLock lock = redissonClient.getLock(MIGRATION_LOCK_KEY);
+        lock.lock();
+        try {
+            // Another node finished while we waited
+            if (migrated.isExists()) {
+                return;
+            }
+
+            long moved = 0;
+            long conflicts = 0;
+            for (String key : redissonClient.getKeys().getKeysByPattern(LEGACY_KEY_PATTERN, config.getScanCount())) {
+                Matcher matcher = LEGACY_KEY.matcher(key);
+                if (!matcher.matches()) {
+                    continue;
+                }
+                if (key.endsWith(LOCK_SUFFIX)) {
+                    // Held by a node of the previous version, which is stopped
+                    redissonClient.getBucket(key).delete();
+                    continue;
+                }
+                if (move(key, tagged(matcher))) {
+                    moved++;
+                } else {
+                    conflicts++;
+                }
+            }
+            long streams = rewriteStreamSet();
+
+            migrated.set(Instant.now().toString());
+            log.info("Legacy event keys migrated - moved: {}, conflicts: {}, streams: {}", moved, conflicts, streams);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return false when the key was left in place because the new name already exists
+     */
+    private boolean move(String key, String newKey) {
+        RBucket<byte[]> source = redissonClient.getBucket(key, ByteArrayCodec.INSTANCE);
+        RBucket<byte[]> target = redissonClient.getBucket(newKey, ByteArrayCodec.INSTANCE);
+        if (target.isExists()) {
+            // Initialized under the new name by a node that started too early, left for reconcile to compare
+            log.error("Legacy event key not moved, new key already exists - key: {}, newKey: {}", key, newKey);
+            return false;
+        }
+
+        byte[] state = source.dump();
+        if (state == null) {
+            // Expired meanwhile
+            return true;
+        }
+        long ttl = source.remainTimeToLive();
+        if (ttl > 0) {
+            target.restore(state, ttl, TimeUnit.MILLISECONDS);
+        } else {
+            target.restore(state);
+        }
+        source.delete();
+
+        if (redissonClient.getKeys().getType(newKey) == RType.OBJECT) {
+            rewritePointer(newKey);
+        }
+        return true;
+    }
+
+    // Pointers hold the name of the current rate version or eligibility filter
+    private void rewritePointer(String key) {
+        RBucket<String> pointer = redissonClient.getBucket(key, StringCodec.INSTANCE);
+        String value = pointer.get();
+        Matcher matcher = value != null ? LEGACY_KEY.matcher(value) : null;
+        if (matcher != null && matcher.matches()) {
+            pointer.compareAndSet(value, tagged(matcher));
+        }
+    }
+
+    private long rewriteStreamSet() {
+        RSet<String> streams = redissonClient.getSet(WIN_STREAMS_KEY, StringCodec.INSTANCE);
+        long rewritten = 0;
+        for (String streamKey : streams.readAll()) {
+            Matcher matcher = LEGACY_KEY.matcher(streamKey);
+            if (matcher.matches()) {
+                streams.add(tagged(matcher));
+                streams.remove(streamKey);
+                rewritten++;
+            }
+        }
+        return rewritten;
+    }
+
+    private String tagged(Matcher legacyKey) {
+        return String.format(TAGGED_KEY, legacyKey.group(1), legacyKey.group(2));
+    }
+}
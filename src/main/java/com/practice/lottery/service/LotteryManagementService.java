@@ -1,5 +1,6 @@
 package com.practice.lottery.service;
 
+import com.practice.lottery.config.LotteryProperties;
 import com.practice.lottery.controller.request.LotteryUpdateRequest;
 import com.practice.lottery.controller.request.UpdatePrizeRateRequest;
 import com.practice.lottery.controller.response.LotteryEventResponse;
@@ -10,16 +11,24 @@ import com.practice.lottery.dao.repository.LotteryEventRepository;
 import com.practice.lottery.dao.repository.LotteryPrizeRepository;
 import com.practice.lottery.exception.LotteryException;
 import lombok.RequiredArgsConstructor;
-import org.redisson.api.RAtomicLong;
+import org.redisson.api.RBatch;
 import org.redisson.api.RBucket;
-import org.redisson.api.RMap;
+import org.redisson.api.RFuture;
 import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
 import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.DigestUtils;
 
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 @Service
@@ -28,74 +37,97 @@ public class LotteryManagementService {
     private final LotteryEventRepository lotteryEventRepository;
     private final LotteryPrizeRepository lotteryPrizeRepository;
     private final RedissonClient redissonClient;
-
-    private static final String EVENT_ACTIVE_KEY = "lottery:%d:isActive";
-    private static final String PRIZE_RATE_KEY = "lottery:%d:prize:rate";
-    private static final String PRIZE_STOCK_KEY = "lottery:%d:prize:%s:stock";
-    private static final String EVENT_REMAIN_KEY = "lottery:%d:remainAmount";
+    private final EventConfigCache eventConfigCache;
+    private final EventQuotaLeaseManager quotaLeaseManager;
+    private final ShardedCounter shardedCounter;
+    private final UserQuotaPreloadService userQuotaPreloadService;
+    private final LotterySyncService lotterySyncService;
+    private final PrizeRateStore prizeRateStore;
+    private final ConfigOutbox configOutbox;
+    private final LotteryProperties lotteryProperties;
+
+    private static final String EVENT_ACTIVE_KEY = "lottery:{%d}:isActive";
+    private static final String PRIZE_STOCK_KEY = "lottery:{%d}:prize:%s:stock";
+    private static final String EVENT_REMAIN_KEY = "lottery:{%d}:remainAmount";
 
     /**
      * Update lottery event settings and prize rates
-     * Synchronizes all changes to Redis
+     * Status and rate changes reach Redis through the config outbox after commit, the remain amount is
+     * written to Redis after commit as well, so a rejected request leaves Redis and the leases untouched.
      */
     @Transactional
     public void updateLotteryRates(LotteryUpdateRequest request) {
         Long eventId = request.getEventId();
 
-        // Step 1: Validate event exists
+        // Step 1: Validate event exists and the request, before anything is written
         LotteryEvent event = lotteryEventRepository.findById(eventId)
                 .orElseThrow(() -> new LotteryException("Lottery event not found"));
+        if (request.getRemainAmount() != null && request.getRemainAmount() < 0) {
+            throw new LotteryException("Remain amount must not be negative: " + request.getRemainAmount());
+        }
+        if (request.getRateUpdateList() != null) {
+            request.getRateUpdateList().forEach(rateUpdate -> validateRateScale(rateUpdate.getRate()));
+        }
 
         // Step 2: Update active status if provided
         if (request.getIsActive() != null) {
             event.setIsActive(request.getIsActive());
-            // Sync to Redis
-            updateEventActiveStatus(eventId, request.getIsActive());
+            configOutbox.append(eventId, ConfigOutbox.ChangeType.EVENT_ACTIVE);
+            if (Boolean.TRUE.equals(request.getIsActive())) {
+                preloadUserQuotas(eventId);
+            }
         }
 
         if(request.getRemainAmount() !=null){
             event.setRemainAmount(request.getRemainAmount());
-            updateRemainAmount(eventId,request.getRemainAmount());
         }
         lotteryEventRepository.save(event);
 
-        // Step 3: Update prize rates if provided
+        // Step 3: Update prize rates if provided, rolls back the whole request when the total exceeds 1.0
         if (request.getRateUpdateList() != null && !request.getRateUpdateList().isEmpty()) {
             updatePrizeRates(eventId, request.getRateUpdateList());
         }
+
+        // Step 4: Redis remain and lease reset only once the new value is committed
+        if (request.getRemainAmount() != null) {
+            Integer remainAmount = request.getRemainAmount();
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    updateRemainAmount(eventId, remainAmount);
+                }
+            });
+        }
+    }
+
+    private void validateRateScale(BigDecimal rate) {
+        if (rate == null || rate.scale() > 2) {
+            throw new LotteryException(
+                    "Rate must have at most 2 decimal places: " + (rate != null ? rate.toPlainString() : null));
+        }
     }
 
     /**
-     * Update prize rates in both database and Redis
+     * Update prize rates in database, Redis follows through the config outbox
      */
     private void updatePrizeRates(Long eventId, java.util.List<UpdatePrizeRateRequest> rateUpdateList) {
-        String rateKey = String.format(PRIZE_RATE_KEY, eventId);
-        RMap<String, BigDecimal> rateMap = redissonClient.getMap(rateKey);
-
         for (UpdatePrizeRateRequest updatePrizeRateRequest : rateUpdateList) {
-            // Validate decimal precision
-            if (updatePrizeRateRequest.getRate().scale() > 2) {
-                throw new LotteryException(
-                        "Rate must have at most 2 decimal places: " + updatePrizeRateRequest.getRate().toPlainString()
-                );
-            }
-
-            // Step 1: Update database
+            // Step 1: Update database, precision was validated with the request
             LotteryPrize prize = lotteryPrizeRepository.findById(updatePrizeRateRequest.getId())
                     .orElseThrow(() -> new LotteryException("Prize not found: " + updatePrizeRateRequest.getId()));
 
             prize.setRate(updatePrizeRateRequest.getRate());
             lotteryPrizeRepository.save(prize);
-
-            // Step 2: Update Redis rate map
-            rateMap.put(prize.getName(), updatePrizeRateRequest.getRate());
         }
 
-        // Step 3: Validate total rate <= 1.0
+        // Step 2: Validate total rate <= 1.0, a rejected update rolls back before anything reached Redis
         BigDecimal totalRate = getTotalPrizeRateByEventId(eventId);
         if (totalRate.compareTo(BigDecimal.ONE) > 0) {
             throw new LotteryException("Total prize rate exceeds 1.0: " + totalRate.toPlainString());
         }
+
+        // Step 3: Publish to Redis after commit, one new rate version for all changes
+        configOutbox.append(eventId, ConfigOutbox.ChangeType.PRIZE_RATES);
     }
 
     /**
@@ -112,25 +144,30 @@ public class LotteryManagementService {
         updateEventActiveStatus(eventId, event.getIsActive());
 
         // Step 3: Refresh event remain amount
-        String eventRemainKey = String.format("lottery:%d:remainAmount", eventId);
-        RAtomicLong eventRemain = redissonClient.getAtomicLong(eventRemainKey);
-        eventRemain.set(event.getRemainAmount());
+        String eventRemainKey = String.format("lottery:{%d}:remainAmount", eventId);
+        shardedCounter.set(eventRemainKey, event.getRemainAmount());
+        quotaLeaseManager.resetLeases(eventId);
 
         // Step 4: Refresh prize rates and stocks
-        String rateKey = String.format(PRIZE_RATE_KEY, eventId);
-        RMap<String, BigDecimal> rateMap = redissonClient.getMap(rateKey);
-        rateMap.clear();
+        Map<String, String> rates = new HashMap<>();
 
         java.util.List<LotteryPrize> prizes = lotteryPrizeRepository.findByLotteryEventId(eventId);
         for (LotteryPrize prize : prizes) {
             // Update rate
-            rateMap.put(prize.getName(), prize.getRate());
+            rates.put(prize.getName(), prize.getRate().toPlainString());
 
             // Update stock
             String stockKey = String.format(PRIZE_STOCK_KEY, eventId, prize.getName());
-            RAtomicLong prizeStock = redissonClient.getAtomicLong(stockKey);
-            prizeStock.set(prize.getAmount());
+            shardedCounter.set(stockKey, prize.getAmount());
         }
+        // Swapped in as a whole: draws keep using the previous version until then, no empty rate map
+        prizeRateStore.publish(eventId, rates);
+
+        // Step 5: Drop near-cached config on all nodes
+        eventConfigCache.publishInvalidation(eventId);
+
+        // Step 6: Warm up user quotas in background
+        preloadUserQuotas(eventId);
     }
 
     /**
@@ -159,16 +196,14 @@ public class LotteryManagementService {
         prize.setRate(newRate);
         lotteryPrizeRepository.save(prize);
 
-        // Update Redis
-        String rateKey = String.format(PRIZE_RATE_KEY, eventId);
-        RMap<String, BigDecimal> rateMap = redissonClient.getMap(rateKey);
-        rateMap.put(prize.getName(), newRate);
-
         // Validate total rate
         BigDecimal totalRate = getTotalPrizeRateByEventId(eventId);
         if (totalRate.compareTo(BigDecimal.ONE) > 0) {
             throw new LotteryException("Total prize rate exceeds 1.0: " + totalRate.toPlainString());
         }
+
+        // Update Redis after commit
+        configOutbox.append(eventId, ConfigOutbox.ChangeType.PRIZE_RATES);
     }
 
     /**
@@ -187,23 +222,25 @@ public class LotteryManagementService {
      */
     public void clearLotteryCache(Long eventId) {
         // Clear active status
-        String activeKey = String.format("lottery:%d:isActive", eventId);
+        String activeKey = String.format("lottery:{%d}:isActive", eventId);
         redissonClient.getBucket(activeKey).delete();
 
         // Clear event remain
-        String eventRemainKey = String.format("lottery:%d:remainAmount", eventId);
-        redissonClient.getAtomicLong(eventRemainKey).delete();
+        String eventRemainKey = String.format("lottery:{%d}:remainAmount", eventId);
+        shardedCounter.delete(eventRemainKey);
+        quotaLeaseManager.resetLeases(eventId);
 
         // Clear rate map
-        String rateKey = String.format(PRIZE_RATE_KEY, eventId);
-        redissonClient.getMap(rateKey).delete();
+        prizeRateStore.delete(eventId);
 
         // Clear prize stocks
         java.util.List<LotteryPrize> prizes = lotteryPrizeRepository.findByLotteryEventId(eventId);
         for (LotteryPrize prize : prizes) {
             String stockKey = String.format(PRIZE_STOCK_KEY, eventId, prize.getName());
-            redissonClient.getAtomicLong(stockKey).delete();
+            shardedCounter.delete(stockKey);
         }
+
+        eventConfigCache.publishInvalidation(eventId);
     }
 
 
@@ -213,8 +250,18 @@ public class LotteryManagementService {
      */
     public void updateEventActiveStatus(Long lotteryEventId, Boolean isActive) {
         String key = String.format(EVENT_ACTIVE_KEY, lotteryEventId);
-        RBucket<Boolean> activeStatus = redissonClient.getBucket(key);
-        activeStatus.set(isActive);
+        RBucket<String> activeStatus = redissonClient.getBucket(key, StringCodec.INSTANCE);
+        activeStatus.set(String.valueOf(Boolean.TRUE.equals(isActive)));
+        eventConfigCache.publishInvalidation(lotteryEventId);
+    }
+
+    /**
+     * Start background preload of all user quotas of the event into Redis, once the transaction has committed
+     */
+    private void preloadUserQuotas(Long eventId) {
+        if (lotteryProperties.getQuotaPreload().isEnabled()) {
+            userQuotaPreloadService.requestPreload(eventId);
+        }
     }
 
 
@@ -224,61 +271,71 @@ public class LotteryManagementService {
      */
     public void updateRemainAmount(Long lotteryEventId, Integer  remainAmount) {
         String key = String.format(EVENT_REMAIN_KEY, lotteryEventId);
-        RAtomicLong eventRemain = redissonClient.getAtomicLong(
-                key
-        );
-        eventRemain.set(Long.valueOf(remainAmount));
+        shardedCounter.set(key, remainAmount);
+
+        // Leased units were taken from the old value, drop them on all nodes
+        quotaLeaseManager.resetLeases(lotteryEventId);
+        eventConfigCache.publishInvalidation(lotteryEventId);
     }
 
 
     /**
      * Get lottery event status with all prize rates and stocks
-     * Fetches from Redis if available, fallback to database
+     * Redis state is read in one batch round trip, each value falls back to the database when missing
      */
     @Transactional(readOnly = true)
     public LotteryStatusResponse getLotteryStatus(Long eventId) {
-        // Step 1: Load event from database
+        // Step 1: Load event and prizes from database
         LotteryEvent event = lotteryEventRepository.findById(eventId)
                 .orElseThrow(() -> new LotteryException("Lottery event not found"));
-
-        // Step 2: Get active status from Redis or database
-        Boolean isActive = getEventActiveStatus(eventId, event.getIsActive());
-
-        // Step 3: Get event remain amount from Redis or database
-        Long remainAmount = getEventRemainAmount(eventId, event.getRemainAmount());
-
-        // Step 4: Load all prizes
         List<LotteryPrize> prizes = lotteryPrizeRepository.findByLotteryEventId(eventId);
 
-        // Step 5: Build prize info list with Redis data
-        String rateKey = String.format(PRIZE_RATE_KEY, eventId);
-        RMap<String, BigDecimal> rateMap = redissonClient.getMap(rateKey);
-
-        List<LotteryStatusResponse.PrizeInfo> prizeInfoList = prizes.stream()
-                .map(prize -> {
-                    // Get rate from Redis, fallback to database
-                    BigDecimal rate = rateMap.getOrDefault(prize.getName(), prize.getRate());
-
-                    // Get stock from Redis, fallback to database
-                    String stockKey = String.format(PRIZE_STOCK_KEY, eventId, prize.getName());
-                    RAtomicLong prizeStock = redissonClient.getAtomicLong(stockKey);
-                    Long stock = prizeStock.isExists() ? prizeStock.get() : (long) prize.getAmount();
-
-                    return LotteryStatusResponse.PrizeInfo.builder()
-                            .prizeId(prize.getId())
-                            .prizeName(prize.getName())
-                            .rate(rate)
-                            .stock(stock)
-                            .build();
-                })
+        // Step 2: Queue all Redis reads on one batch
+        RBatch batch = redissonClient.createBatch();
+        RFuture<String> activeRead = batch.<String>getBucket(
+                String.format(EVENT_ACTIVE_KEY, eventId), StringCodec.INSTANCE).getAsync();
+        ShardedCounter.BatchedRead remainRead = shardedCounter.readAsync(batch, String.format(EVENT_REMAIN_KEY, eventId));
+        RFuture<List<Object>> ratesRead = prizeRateStore.readAsync(batch, eventId);
+        List<ShardedCounter.BatchedRead> stockReads = prizes.stream()
+                .map(prize -> shardedCounter.readAsync(batch, String.format(PRIZE_STOCK_KEY, eventId, prize.getName())))
                 .toList();
+        RFuture<String> watermarkRead = lotterySyncService.readSyncWatermarkAsync(batch, eventId);
+        batch.execute();
+
+        // Step 3: Event values from Redis, fallback to database
+        String redisActive = activeRead.toCompletableFuture().join();
+        Boolean isActive = redisActive != null ? Boolean.valueOf(redisActive) : event.getIsActive();
+        Long redisRemain = remainRead.value();
+        Long remainAmount = redisRemain != null ? redisRemain : event.getRemainAmount().longValue();
+
+        // Step 4: Build prize info list with Redis data
+        Map<String, String> rateMap = PrizeRateStore.toRates(ratesRead.toCompletableFuture().join());
+        List<LotteryStatusResponse.PrizeInfo> prizeInfoList = new ArrayList<>(prizes.size());
+        for (int i = 0; i < prizes.size(); i++) {
+            LotteryPrize prize = prizes.get(i);
+
+            // Get rate from Redis, fallback to database
+            String redisRate = rateMap.get(prize.getName());
+            BigDecimal rate = redisRate != null ? new BigDecimal(redisRate) : prize.getRate();
+
+            // Get stock from Redis, fallback to database
+            Long redisStock = stockReads.get(i).value();
+            Long stock = redisStock != null ? redisStock : (long) prize.getAmount();
+
+            prizeInfoList.add(LotteryStatusResponse.PrizeInfo.builder()
+                    .prizeId(prize.getId())
+                    .prizeName(prize.getName())
+                    .rate(rate)
+                    .stock(stock)
+                    .build());
+        }
 
-        // Step 6: Calculate total rate
+        // Step 5: Calculate total rate
         BigDecimal totalRate = prizeInfoList.stream()
                 .map(LotteryStatusResponse.PrizeInfo::getRate)
                 .reduce(BigDecimal.ZERO, BigDecimal::add);
 
-        // Step 7: Build response
+        // Step 6: Build response
         return LotteryStatusResponse.builder()
                 .eventId(event.getId())
                 .eventName(event.getName())
@@ -286,9 +343,29 @@ public class LotteryManagementService {
                 .remainAmount(remainAmount)
                 .totalRate(totalRate)
                 .prizes(prizeInfoList)
+                .lastSyncedAt(LotterySyncService.toSyncWatermark(watermarkRead.toCompletableFuture().join()))
                 .build();
     }
 
+    /**
+     * Entity tag of a status: changes whenever any value in it changes (config, counters, sync watermark)
+     */
+    public String getStatusETag(LotteryStatusResponse status) {
+        StringBuilder state = new StringBuilder()
+                .append(status.getEventId()).append('|')
+                .append(status.getEventName()).append('|')
+                .append(status.getIsActive()).append('|')
+                .append(status.getRemainAmount()).append('|')
+                .append(status.getLastSyncedAt());
+        for (LotteryStatusResponse.PrizeInfo prize : status.getPrizes()) {
+            state.append('|').append(prize.getPrizeId())
+                    .append(':').append(prize.getPrizeName())
+                    .append(':').append(prize.getRate().toPlainString())
+                    .append(':').append(prize.getStock());
+        }
+        return "\"" + DigestUtils.md5DigestAsHex(state.toString().getBytes(StandardCharsets.UTF_8)) + "\"";
+    }
+
     @Transactional(readOnly = true)
     public List<LotteryEventResponse> getAllEvents() {
         List<LotteryEvent> events = lotteryEventRepository.findAll(Sort.by(Sort.Direction.DESC, "id"));
@@ -298,23 +375,13 @@ public class LotteryManagementService {
     }
 
 
-    /**
-     * Get event active status, prefer Redis
-     */
-    private Boolean getEventActiveStatus(Long eventId, Boolean dbValue) {
-        String activeKey = String.format("lottery:%d:isActive", eventId);
-        RBucket<Boolean> bucket = redissonClient.getBucket(activeKey);
-        Boolean redisValue = bucket.get();
-        return redisValue != null ? redisValue : dbValue;
-    }
-
     /**
      * Get event remain amount, prefer Redis
      */
     private Long getEventRemainAmount(Long eventId, Integer dbValue) {
-        String remainKey = String.format("lottery:%d:remainAmount", eventId);
-        RAtomicLong remain = redissonClient.getAtomicLong(remainKey);
-        return remain.isExists() ? remain.get() : dbValue.longValue();
+        String remainKey = String.format("lottery:{%d}:remainAmount", eventId);
+        Long redisRemain = shardedCounter.getOrNull(remainKey);
+        return redisRemain != null ? redisRemain : dbValue.longValue();
     }
 
     private LotteryEventResponse convertToEventResponse(LotteryEvent event) {
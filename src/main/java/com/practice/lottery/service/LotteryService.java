@@ -1,5 +1,6 @@
 package com.practice.lottery.service;
 
+import com.practice.lottery.config.LotteryProperties;
 import com.practice.lottery.dao.entity.LotteryEvent;
 import com.practice.lottery.dao.entity.LotteryPrize;
 import com.practice.lottery.dao.entity.UserLotteryQuota;
@@ -11,10 +12,15 @@ import com.practice.lottery.exception.NoEntryException;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.redisson.api.*;
+import org.redisson.client.codec.StringCodec;
 import org.springframework.stereotype.Service;
 
 import java.math.BigDecimal;
-import java.util.LinkedHashMap;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -28,14 +34,33 @@ public class LotteryService {
     private final RedissonClient redissonClient;
     private final UserLotteryQuotaRepository userLotteryQuotaRepository;
     private final WinRecordService winRecordService;
-    private final LotterySyncService lotterySyncService;
+    private final EmergencySyncCoordinator emergencySyncCoordinator;
+    private final RedisScriptExecutor redisScriptExecutor;
+    private final LotteryProperties lotteryProperties;
+    private final EventConfigCache eventConfigCache;
+    private final DrawRandomSource drawRandomSource;
+    private final EventQuotaLeaseManager quotaLeaseManager;
+    private final ShardedCounter shardedCounter;
+    private final EventInitSingleflight initSingleflight;
+    private final SoldOutRegistry soldOutRegistry;
+    private final EventEligibilityFilter eligibilityFilter;
+    private final WinRecordWriter winRecordWriter;
+    private final WinJournalService winJournalService;
+    private final RecentWinsCache recentWinsCache;
+    private final PrizeRateStore prizeRateStore;
 
     // Redis key templates
-    private static final String EVENT_REMAIN_KEY = "lottery:%d:remainAmount";
-    private static final String USER_CHANCE_KEY = "lottery:%d:user:%d:chance";
-    private static final String PRIZE_STOCK_KEY = "lottery:%d:prize:%s:stock";
-    private static final String PRIZE_RATE_KEY = "lottery:%d:prize:rate";
-    private static final String EVENT_ACTIVE_KEY = "lottery:%d:isActive";
+    private static final String EVENT_REMAIN_KEY = "lottery:{%d}:remainAmount";
+    private static final String USER_CHANCE_KEY = "lottery:{%d}:user:%d:chance";
+    private static final String PRIZE_STOCK_KEY = "lottery:{%d}:prize:%s:stock";
+    private static final String EVENT_ACTIVE_KEY = "lottery:{%d}:isActive";
+
+    private static final String DRAW_SCRIPT = "draw";
+    // Every missing cache key costs one extra attempt: active flag, event remain, user chance, rates,
+    // plus one for a rate version published after the near-cache was loaded
+    private static final int MAX_SCRIPT_ATTEMPTS = 6;
+    // Upper bound for one batch, the whole batch runs inside a single Redis script
+    private static final int MAX_BATCH_DRAWS = 100;
 
     /**
      * Initialize lottery event prize stock and total draw count
@@ -45,30 +70,26 @@ public class LotteryService {
                 .orElseThrow(() -> new IllegalStateException("Lottery event not found"));
 
         // Initialize event remaining draw count
-        RAtomicLong eventRemain = redissonClient.getAtomicLong(
-                String.format(EVENT_REMAIN_KEY, lotteryEventId)
-        );
-        eventRemain.set(event.getRemainAmount());
+        shardedCounter.set(String.format(EVENT_REMAIN_KEY, lotteryEventId), event.getRemainAmount());
 
         // Initialize prize stock and rate
         List<LotteryPrize> prizeList = lotteryPrizeRepository.findByLotteryEventId(lotteryEventId);
 
-        RMap<String, BigDecimal> rateMap = redissonClient.getMap(
-                String.format(PRIZE_RATE_KEY, lotteryEventId)
-        );
-        rateMap.clear();
-
+        Map<String, String> rates = new HashMap<>();
         for (LotteryPrize prize : prizeList) {
             if (prize.getAmount() > 0) {
-                // Store each prize stock as RAtomicLong
+                // Store each prize stock as (sharded) RAtomicLong
                 String stockKey = String.format(PRIZE_STOCK_KEY, lotteryEventId, prize.getName());
-                RAtomicLong prizeStock = redissonClient.getAtomicLong(stockKey);
-                prizeStock.set(prize.getAmount());
+                shardedCounter.set(stockKey, prize.getAmount());
 
-                rateMap.put(prize.getName(), prize.getRate());
+                rates.put(prize.getName(), prize.getRate().toPlainString());
             }
         }
+        // New version swapped in at once, draws never see the rates half written
+        prizeRateStore.publish(lotteryEventId, rates);
 
+        quotaLeaseManager.resetLeases(lotteryEventId);
+        eventConfigCache.publishInvalidation(lotteryEventId);
         log.info("Initialized prize stock for lottery event {}", lotteryEventId);
     }
 
@@ -81,58 +102,280 @@ public class LotteryService {
      * @return 中獎獎品名稱
      */
     public String drawRedis(Long lotteryEventId, Long userId, Boolean isKeepResult) {
+        rejectKnownExhausted(lotteryEventId, userId);
+
         try {
-            // Step 1: Validate event is active
-            validateEventActive(lotteryEventId);
+            // Journaled wins are written by draw.lua itself, so journal mode always draws with the script
+            boolean journal = Boolean.TRUE.equals(isKeepResult) && winJournalService.isEnabled();
+            // Second precision like win_record.created_time, one value for the cache and every write path
+            LocalDateTime wonAt = LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS);
+            String selectedPrize = lotteryProperties.getDraw().isScriptEnabled() || journal
+                    ? drawWithScript(lotteryEventId, userId, journal, wonAt)
+                    : drawWithRedisson(lotteryEventId, userId);
+
+            if (!"Miss".equals(selectedPrize) && Boolean.TRUE.equals(isKeepResult)) {
+                recentWinsCache.record(lotteryEventId, userId, List.of(new DrawResult(selectedPrize, null)), wonAt);
+                if (!journal) {
+                    saveWinRecordAsync(lotteryEventId, userId, selectedPrize, wonAt);
+                }
+            }
 
-            // Step 2: Check and decrement quota (atomic operations, order matters!)
-            checkAndDecrementQuota(lotteryEventId, userId);
+            log.info("Lottery draw completed - eventId: {}, userId: {}, result: {}",
+                    lotteryEventId, userId, selectedPrize);
 
-            // Step 3: Load prize data
-            PrizeData prizeData = loadPrizeData(lotteryEventId);
+            return selectedPrize;
 
-            // Step 4: Execute lottery selection logic
-            String selectedPrize = selectPrize(prizeData);
+        }  catch (LotteryException e) {
+            log.error("Lottery business error - eventId: {}, userId: {}, message: {}",
+                    lotteryEventId, userId, e.getMessage());
+            emergencySyncCoordinator.requestSync(lotteryEventId, userId, e);
+            throw e;
+        } catch (NoEntryException e) {
+            // Not a participant: nothing was decremented, so no sync
+            log.warn("Lottery draw rejected - eventId: {}, userId: {}, message: {}",
+                    lotteryEventId, userId, e.getMessage());
+            throw e;
+        } catch (Exception e) {
+            log.error("Unexpected lottery error - eventId: {}, userId: {}",
+                    lotteryEventId, userId, e);
+            emergencySyncCoordinator.requestSync(lotteryEventId, userId, e);
+            throw new LotteryException("System error, please try again later");
+        }
+    }
 
-            // Step 5: Decrement prize stock and save result
-            if (!"Miss".equals(selectedPrize)) {
-                selectedPrize = decrementPrizeStock(lotteryEventId, selectedPrize);
+    /**
+     * Draw several times in one Redis round trip
+     * Event and user quota for all draws are reserved up front (all or nothing),
+     * wins are saved with one batched write.
+     *
+     * @param lotteryEventId 活動ID
+     * @param userId 用戶ID
+     * @param times 抽獎次數
+     * @param isKeepResult 是否保存中獎記錄
+     * @return 每次抽獎的獎品名稱
+     */
+    public List<String> drawBatch(Long lotteryEventId, Long userId, int times, Boolean isKeepResult) {
+        if (times < 1 || times > MAX_BATCH_DRAWS) {
+            throw new LotteryException("Draw times must be between 1 and " + MAX_BATCH_DRAWS);
+        }
+        rejectKnownExhausted(lotteryEventId, userId);
 
-                if (!"Miss".equals(selectedPrize) && Boolean.TRUE.equals(isKeepResult)) {
-                    saveWinRecordAsync(lotteryEventId, userId, selectedPrize);
+        try {
+            boolean journal = Boolean.TRUE.equals(isKeepResult) && winJournalService.isEnabled();
+            LocalDateTime wonAt = LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS);
+            List<DrawResult> results = executeDrawScript(lotteryEventId, userId, times, journal, wonAt);
+
+            List<DrawResult> wins = results.stream()
+                    .filter(DrawResult::isWin)
+                    .toList();
+            if (!wins.isEmpty() && Boolean.TRUE.equals(isKeepResult)) {
+                recentWinsCache.record(lotteryEventId, userId, wins, wonAt);
+                if (!journal) {
+                    saveWinRecordsAsync(lotteryEventId, userId, wins, wonAt);
                 }
             }
 
-            log.info("Lottery draw completed - eventId: {}, userId: {}, result: {}",
-                    lotteryEventId, userId, selectedPrize);
+            log.info("Lottery batch draw completed - eventId: {}, userId: {}, times: {}, wins: {}",
+                    lotteryEventId, userId, times, wins.size());
 
-            return selectedPrize;
+            return results.stream()
+                    .map(DrawResult::prize)
+                    .toList();
 
-        }  catch (LotteryException e) {
+        } catch (LotteryException e) {
             log.error("Lottery business error - eventId: {}, userId: {}, message: {}",
                     lotteryEventId, userId, e.getMessage());
-            lotterySyncService.emergencySyncAfterError(lotteryEventId,userId,e);
+            emergencySyncCoordinator.requestSync(lotteryEventId, userId, e);
+            throw e;
+        } catch (NoEntryException e) {
+            // Not a participant: nothing was decremented, so no sync
+            log.warn("Lottery draw rejected - eventId: {}, userId: {}, message: {}",
+                    lotteryEventId, userId, e.getMessage());
             throw e;
         } catch (Exception e) {
             log.error("Unexpected lottery error - eventId: {}, userId: {}",
                     lotteryEventId, userId, e);
-            lotterySyncService.emergencySyncAfterError(lotteryEventId,userId,e);
+            emergencySyncCoordinator.requestSync(lotteryEventId, userId, e);
             throw new LotteryException("System error, please try again later");
         }
     }
 
+    /**
+     * Reject from local flags only, without Redis and without emergency sync
+     * Nothing was decremented, so there is nothing to sync
+     */
+    private void rejectKnownExhausted(Long lotteryEventId, Long userId) {
+        if (soldOutRegistry.isEventSoldOut(lotteryEventId)) {
+            throw new LotteryException("Lottery event ended, insufficient remaining draws");
+        }
+        if (soldOutRegistry.isUserExhausted(lotteryEventId, userId)) {
+            throw new LotteryException("User has insufficient remaining draws");
+        }
+    }
+
+    /**
+     * Draw with one Redisson call per step
+     */
+    private String drawWithRedisson(Long lotteryEventId, Long userId) {
+        // Step 1: Validate event is active
+        validateEventActive(lotteryEventId);
+
+        // Step 2: Check and decrement quota (atomic operations, order matters!)
+        long sequence = checkAndDecrementQuota(lotteryEventId, userId);
+
+        // Step 3: Load prize data
+        PrizeData prizeData = loadPrizeData(lotteryEventId);
+
+        // Step 4: Execute lottery selection logic
+        double random = drawRandomSource.forDraw(lotteryEventId, userId, sequence).nextDouble();
+        String selectedPrize = selectPrize(prizeData, random);
+
+        // Step 5: Decrement prize stock
+        if (!"Miss".equals(selectedPrize)) {
+            selectedPrize = decrementPrizeStock(lotteryEventId, userId, selectedPrize);
+        }
+        return selectedPrize;
+    }
+
+    /**
+     * Single draw with the draw.lua script
+     */
+    private String drawWithScript(Long lotteryEventId, Long userId, boolean journal, LocalDateTime wonAt) {
+        return executeDrawScript(lotteryEventId, userId, 1, journal, wonAt).get(0).prize();
+    }
+
+    /**
+     * Run the draw.lua script: active check, quota decrement, prize selection
+     * and stock decrement for all draws run atomically in a single round trip.
+     * Missing cache keys are initialized from database and the script is retried.
+     * With journal set, wins are also appended to the event's win stream by the script, stamped with wonAt.
+     * Every key the script touches is passed in KEYS and shares the {eventId} hash tag: the prize stock
+     * keys come from the near-cached rate version, which the script checks against the current pointer.
+     */
+    private List<DrawResult> executeDrawScript(Long lotteryEventId, Long userId, int times, boolean journal,
+                                               LocalDateTime wonAt) {
+        String userKey = String.format(USER_CHANCE_KEY, lotteryEventId, userId);
+        if (journal) {
+            winJournalService.registerStream(lotteryEventId);
+        }
+
+        // With quota leases the event quota is taken locally and the script skips the remain key
+        boolean leased = quotaLeaseManager.isEnabled();
+        EventQuotaLeaseManager.Lease lease = leased ? acquireLeasedQuota(lotteryEventId, times) : null;
+
+        boolean drawn = false;
+        try {
+            for (int attempt = 0; attempt < MAX_SCRIPT_ATTEMPTS; attempt++) {
+                EventConfig config = eventConfigCache.get(lotteryEventId, this::loadEventConfig);
+                List<Object> keys = new ArrayList<>(List.of(
+                        String.format(EVENT_ACTIVE_KEY, lotteryEventId),
+                        String.format(EVENT_REMAIN_KEY, lotteryEventId),
+                        userKey,
+                        prizeRateStore.pointerKey(lotteryEventId),
+                        // No version loaded (inactive when cached): never equals the pointer, script asks for a reload
+                        config.rateVersion() != null ? config.rateVersion() : prizeRateStore.pointerKey(lotteryEventId),
+                        winJournalService.streamKey(lotteryEventId)
+                ));
+                List<Object> args = new ArrayList<>(List.of(
+                        String.valueOf(drawRandomSource.scriptSeed(lotteryEventId, userId)),
+                        String.valueOf(times), leased ? "1" : "0",
+                        journal ? "1" : "0", String.valueOf(userId),
+                        String.valueOf(wonAt.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli())));
+                PrizeTable prizeTable = config.prizeTable();
+                for (int i = 0; i < prizeTable.size(); i++) {
+                    keys.add(String.format(PRIZE_STOCK_KEY, lotteryEventId, prizeTable.name(i)));
+                    args.add(prizeTable.name(i));
+                }
+
+                List<Object> result = redisScriptExecutor.execute(
+                        DRAW_SCRIPT, RScript.ReturnType.MULTI, keys, args.toArray());
+
+                String status = (String) result.get(0);
+                switch (status) {
+                    case "OK" -> {
+                        drawn = true;
+                        List<DrawResult> results = parseDrawResults(result);
+                        markSoldOutPrizes(lotteryEventId, results);
+                        return results;
+                    }
+                    case "INACTIVE" -> throw new LotteryException("Lottery event is not active");
+                    case "EVENT_EMPTY" -> {
+                        // A batch may be rejected while single draws are still possible
+                        if (times == 1) {
+                            soldOutRegistry.markEventSoldOut(lotteryEventId);
+                        }
+                        throw new LotteryException("Lottery event ended, insufficient remaining draws");
+                    }
+                    case "USER_EMPTY" -> {
+                        if (times == 1) {
+                            soldOutRegistry.markUserExhausted(lotteryEventId, userId);
+                        }
+                        throw new LotteryException("User has insufficient remaining draws");
+                    }
+                    case "NO_ACTIVE_KEY" -> {
+                        eventConfigCache.invalidateLocal(lotteryEventId);
+                        isEventActive(lotteryEventId);
+                    }
+                    case "NO_EVENT_KEY" -> initEventRemain(lotteryEventId);
+                    case "NO_USER_KEY" -> initUserChance(lotteryEventId, userId, redissonClient.getAtomicLong(userKey));
+                    case "NO_RATES" -> {
+                        eventConfigCache.invalidateLocal(lotteryEventId);
+                        loadPrizeData(lotteryEventId);
+                    }
+                    case "RATES_CHANGED" -> eventConfigCache.invalidateLocal(lotteryEventId);
+                    default -> throw new IllegalStateException("Unknown draw script status: " + status);
+                }
+            }
+
+            throw new IllegalStateException("Draw script did not complete after cache initialization");
+        } finally {
+            if (leased && !drawn) {
+                quotaLeaseManager.release(lotteryEventId, lease, times);
+            }
+        }
+    }
+
+    /**
+     * Broadcast prizes whose last unit was won in this draw
+     */
+    private void markSoldOutPrizes(Long lotteryEventId, List<DrawResult> results) {
+        for (DrawResult result : results) {
+            if (result.isWin() && result.stockLeft() != null && result.stockLeft() <= 0) {
+                soldOutRegistry.markPrizeSoldOut(lotteryEventId, result.prize());
+            }
+        }
+    }
+
+    /**
+     * Script result is {'OK', prize1, stockLeft1, prize2, stockLeft2, ...}
+     */
+    private List<DrawResult> parseDrawResults(List<Object> result) {
+        List<DrawResult> results = new ArrayList<>((result.size() - 1) / 2);
+        for (int i = 1; i + 1 < result.size(); i += 2) {
+            String prize = (String) result.get(i);
+            String stockLeft = (String) result.get(i + 1);
+            results.add(new DrawResult(prize, stockLeft.isEmpty() ? null : Integer.valueOf(stockLeft)));
+        }
+        return results;
+    }
+
     /**
      * Check and decrement quota using Redisson atomic operations
      * CRITICAL: Must decrement in correct order (event first, then user) for rollback safety
+     *
+     * @return user remaining chance after this draw, used as the draw sequence
      */
-    private void checkAndDecrementQuota(Long lotteryEventId, Long userId) {
+    private long checkAndDecrementQuota(Long lotteryEventId, Long userId) {
+        if (quotaLeaseManager.isEnabled()) {
+            return checkAndDecrementLeasedQuota(lotteryEventId, userId);
+        }
+
         String eventKey = String.format(EVENT_REMAIN_KEY, lotteryEventId);
         String userKey = String.format(USER_CHANCE_KEY, lotteryEventId, userId);
 
         // Get or initialize event remaining count
-        RAtomicLong eventRemain = redissonClient.getAtomicLong(eventKey);
-        if (!eventRemain.isExists()) {
-            initEventRemain(lotteryEventId, eventRemain);
+        if (!shardedCounter.isExists(eventKey)) {
+            initEventRemain(lotteryEventId);
         }
 
         // Get or initialize user chance count
@@ -141,10 +384,9 @@ public class LotteryService {
             initUserChance(lotteryEventId, userId, userChance);
         }
 
-        // Atomically decrement event count first
-        long eventAfter = eventRemain.decrementAndGet();
-        if (eventAfter < 0) {
-            eventRemain.incrementAndGet(); // Rollback
+        // Atomically decrement event count first (shard picked by user, rolled back inside when empty)
+        if (!shardedCounter.tryDecrement(eventKey, userId)) {
+            soldOutRegistry.markEventSoldOut(lotteryEventId);
             throw new LotteryException("Lottery event ended, insufficient remaining draws");
         }
 
@@ -152,153 +394,242 @@ public class LotteryService {
         long userAfter = userChance.decrementAndGet();
         if (userAfter < 0) {
             userChance.incrementAndGet(); // Rollback user
-            eventRemain.incrementAndGet(); // Rollback event
+            shardedCounter.increment(eventKey, userId); // Rollback event
+            soldOutRegistry.markUserExhausted(lotteryEventId, userId);
             throw new LotteryException("User has insufficient remaining draws");
         }
+        return userAfter;
     }
 
     /**
-     * Initialize event remaining draw count from database
+     * Same as checkAndDecrementQuota, but the event quota comes from this node's lease
      */
-    private void initEventRemain(Long lotteryEventId, RAtomicLong eventRemain) {
-        LotteryEvent event = lotteryEventRepository.findById(lotteryEventId)
-                .orElseThrow(() -> new LotteryException("Lottery event not found, eventId=" + lotteryEventId));
+    private long checkAndDecrementLeasedQuota(Long lotteryEventId, Long userId) {
+        String userKey = String.format(USER_CHANCE_KEY, lotteryEventId, userId);
 
-        int remain = Optional.ofNullable(event.getRemainAmount()).orElse(0);
-        if (remain <= 0) {
-            throw new LotteryException("Lottery event ended, insufficient remaining draws");
+        // Take event quota from local lease first
+        EventQuotaLeaseManager.Lease lease = acquireLeasedQuota(lotteryEventId, 1);
+
+        try {
+            RAtomicLong userChance = redissonClient.getAtomicLong(userKey);
+            if (!userChance.isExists()) {
+                initUserChance(lotteryEventId, userId, userChance);
+            }
+
+            long userAfter = userChance.decrementAndGet();
+            if (userAfter < 0) {
+                userChance.incrementAndGet(); // Rollback user
+                soldOutRegistry.markUserExhausted(lotteryEventId, userId);
+                throw new LotteryException("User has insufficient remaining draws");
+            }
+            return userAfter;
+        } catch (RuntimeException e) {
+            quotaLeaseManager.release(lotteryEventId, lease, 1); // Rollback event (local)
+            throw e;
         }
+    }
 
-        // Use compareAndSet to avoid race condition during initialization
-        eventRemain.compareAndSet(0, remain);
+    /**
+     * Take event quota units from this node's lease, initializing the remain key from database if needed
+     *
+     * @return the lease the units came from, needed to release them on rollback
+     */
+    private EventQuotaLeaseManager.Lease acquireLeasedQuota(Long lotteryEventId, int units) {
+        for (int attempt = 0; attempt < 2; attempt++) {
+            EventQuotaLeaseManager.Acquisition acquisition = quotaLeaseManager.tryAcquire(lotteryEventId, units);
+            switch (acquisition.result()) {
+                case ACQUIRED -> {
+                    return acquisition.lease();
+                }
+                case EXHAUSTED -> {
+                    // Other nodes may still hold leased units, only broadcast once nothing is out
+                    if (units == 1 && quotaLeaseManager.getOutstandingUnits(lotteryEventId) == 0) {
+                        soldOutRegistry.markEventSoldOut(lotteryEventId);
+                    }
+                    throw new LotteryException("Lottery event ended, insufficient remaining draws");
+                }
+                case NOT_INITIALIZED -> initEventRemain(lotteryEventId);
+            }
+        }
+
+        throw new IllegalStateException("Event remain amount could not be initialized");
+    }
+
+    /**
+     * Initialize event remaining draw count from database, once across all nodes
+     */
+    private void initEventRemain(Long lotteryEventId) {
+        String eventKey = String.format(EVENT_REMAIN_KEY, lotteryEventId);
+        initSingleflight.load(lotteryEventId, "remain",
+                () -> shardedCounter.isExists(eventKey) ? Boolean.TRUE : null,
+                () -> {
+                    LotteryEvent event = lotteryEventRepository.findById(lotteryEventId)
+                            .orElseThrow(() -> new LotteryException("Lottery event not found, eventId=" + lotteryEventId));
+
+                    int remain = Optional.ofNullable(event.getRemainAmount()).orElse(0);
+                    if (remain <= 0) {
+                        soldOutRegistry.markEventSoldOut(lotteryEventId);
+                        throw new LotteryException("Lottery event ended, insufficient remaining draws");
+                    }
+
+                    // Only where missing: a counter already drawn down to 0 is not refilled
+                    shardedCounter.initIfAbsent(eventKey, remain);
+                    return Boolean.TRUE;
+                });
     }
 
     /**
      * Initialize user lottery chance from database
+     * Users missing from the event's eligibility filter that were recently looked up without result are
+     * rejected without a query; others missing from it may have been granted quota after it was built.
      */
     private void initUserChance(Long lotteryEventId, Long userId, RAtomicLong userChance) {
-        UserLotteryQuota quota = userLotteryQuotaRepository
-                .findByUidAndLotteryEventId(userId, lotteryEventId)
-                .orElseThrow(() -> new NoEntryException("User lottery quota not found"));
+        boolean inFilter = eligibilityFilter.mightBeEligible(lotteryEventId, userId);
+        if (!inFilter && eligibilityFilter.isKnownIneligible(lotteryEventId, userId)) {
+            throw new NoEntryException("User lottery quota not found");
+        }
+
+        Optional<UserLotteryQuota> found = userLotteryQuotaRepository.findByUidAndLotteryEventId(userId, lotteryEventId);
+        if (found.isEmpty()) {
+            if (!inFilter) {
+                eligibilityFilter.markIneligible(lotteryEventId, userId);
+            }
+            throw new NoEntryException("User lottery quota not found");
+        }
+        if (!inFilter) {
+            // Granted after the filter was built
+            eligibilityFilter.addEligibleUser(lotteryEventId, userId);
+        }
+        UserLotteryQuota quota = found.get();
 
         Integer drawQuota = Optional.ofNullable(quota.getDrawQuota()).orElse(0);
         if (drawQuota <= 0) {
+            soldOutRegistry.markUserExhausted(lotteryEventId, userId);
             throw new LotteryException("User has insufficient remaining draws");
         }
 
-        // Use compareAndSet to avoid race condition during initialization
-        userChance.compareAndSet(0, drawQuota.longValue());
+        // Only if still missing: a concurrent init may already have been drawn down to 0
+        redissonClient.getBucket(userChance.getName(), StringCodec.INSTANCE).setIfAbsent(String.valueOf(drawQuota));
     }
 
     /**
-     * Load prize data from Redis, fallback to database if not exists
+     * Load prize data from the near-cache
      */
     private PrizeData loadPrizeData(Long lotteryEventId) {
-        RMap<String, BigDecimal> rateMap = redissonClient.getMap(
-                String.format(PRIZE_RATE_KEY, lotteryEventId)
-        );
-
-        // Load from database if Redis cache is empty
-        if (rateMap.isEmpty()) {
-            synchronized (this) { // Double-check locking for initialization
-                if (rateMap.isEmpty()) {
-                    initializePrizeDataFromDatabase(lotteryEventId, rateMap);
-                }
-            }
+        EventConfig config = eventConfigCache.get(lotteryEventId, this::loadEventConfig);
+        if (config.prizeTable().isEmpty()) {
+            throw new LotteryException("Lottery prizes not found");
         }
 
-        return new PrizeData(lotteryEventId, rateMap);
+        return new PrizeData(lotteryEventId, config.prizeTable());
+    }
+
+    /**
+     * Near-cache loader: read active flag and prize rates from Redis, fallback to database if not exists
+     * Prize rates are only needed (and initialized) for active events
+     */
+    private EventConfig loadEventConfig(Long lotteryEventId) {
+        boolean active = loadEventActive(lotteryEventId);
+        PrizeRateStore.Rates rates = active ? loadPrizeRates(lotteryEventId) : null;
+        List<EventConfig.Prize> prizes = rates == null ? List.of() : rates.rates().entrySet().stream()
+                .map(entry -> new EventConfig.Prize(entry.getKey(), new BigDecimal(entry.getValue())))
+                .toList();
+
+        return new EventConfig(lotteryEventId, active, PrizeTable.compile(prizes),
+                rates == null ? null : rates.versionKey(), System.currentTimeMillis());
+    }
+
+    /**
+     * Load prize rates from Redis, fallback to database if not exists (one node per event loads)
+     */
+    private PrizeRateStore.Rates loadPrizeRates(Long lotteryEventId) {
+        return initSingleflight.load(lotteryEventId, "rates",
+                () -> {
+                    PrizeRateStore.Rates cached = prizeRateStore.read(lotteryEventId);
+                    return cached.isEmpty() ? null : cached;
+                },
+                () -> {
+                    initializePrizeDataFromDatabase(lotteryEventId);
+                    return prizeRateStore.read(lotteryEventId);
+                });
     }
 
     /**
      * Initialize prize data from database
      */
-    private void initializePrizeDataFromDatabase(Long lotteryEventId, RMap<String, BigDecimal> rateMap) {
+    private void initializePrizeDataFromDatabase(Long lotteryEventId) {
         List<LotteryPrize> prizeList = lotteryPrizeRepository.findByLotteryEventId(lotteryEventId);
         if (prizeList.isEmpty()) {
             throw new LotteryException("Lottery prizes not found");
         }
 
+        Map<String, String> rates = new HashMap<>();
         for (LotteryPrize prize : prizeList) {
-            // Initialize each prize stock as RAtomicLong
+            // Initialize each prize stock as (sharded) RAtomicLong
             String stockKey = String.format(PRIZE_STOCK_KEY, lotteryEventId, prize.getName());
-            RAtomicLong prizeStock = redissonClient.getAtomicLong(stockKey);
-            if (!prizeStock.isExists()) {
-                prizeStock.set(prize.getAmount());
+            if (!shardedCounter.isExists(stockKey)) {
+                shardedCounter.set(stockKey, prize.getAmount());
             }
 
-            rateMap.put(prize.getName(), Optional.ofNullable(prize.getRate()).orElse(BigDecimal.ZERO));
+            rates.put(prize.getName(), Optional.ofNullable(prize.getRate()).orElse(BigDecimal.ZERO).toPlainString());
         }
+        prizeRateStore.publishIfEmpty(lotteryEventId, rates);
 
         log.info("Initialized prize data from database for event {}", lotteryEventId);
     }
 
     /**
-     * Select prize using cumulative probability algorithm
+     * Select prize with the compiled alias table (O(1), no allocation)
      * Returns "Miss" if no prizes available or luck runs out
      */
-    private String selectPrize(PrizeData prizeData) {
-        // Filter prizes with stock greater than 0
-        List<String> availablePrizes = prizeData.rateMap().keySet().stream()
-                .filter(prizeName -> hasPrizeStock(prizeData.eventId(), prizeName))
-                .toList();
-
-        if (availablePrizes.isEmpty()) {
-            return "Miss";
-        }
-
-        // Build cumulative probability map (0 to total rate)
-        BigDecimal cumulative = BigDecimal.ZERO;
-        Map<String, BigDecimal> cumulativeMap = new LinkedHashMap<>();
-
-        for (String prize : availablePrizes) {
-            BigDecimal rate = prizeData.rateMap().getOrDefault(prize, BigDecimal.ZERO);
-            cumulative = cumulative.add(rate);
-            cumulativeMap.put(prize, cumulative);
-        }
-
-        // Add "Miss" to cover remaining probability space (total rate to 1.0)
-        BigDecimal totalPrizeRate = cumulative;
-        if (totalPrizeRate.compareTo(BigDecimal.ONE) < 0) {
-            cumulativeMap.put("Miss", BigDecimal.ONE);
+    private String selectPrize(PrizeData prizeData, double random) {
+        PrizeTable prizeTable = prizeData.prizeTable();
+
+        // Bitmask of prizes with stock greater than 0
+        long availableMask = 0L;
+        for (int i = 0; i < prizeTable.size(); i++) {
+            if (hasPrizeStock(prizeData.eventId(), prizeTable.name(i))) {
+                availableMask |= 1L << i;
+            }
         }
 
-        // Random selection: generate random value between 0 and 1
-        BigDecimal random = BigDecimal.valueOf(Math.random());
-
-        for (Map.Entry<String, BigDecimal> entry : cumulativeMap.entrySet()) {
-            if (random.compareTo(entry.getValue()) <= 0) {
-                return entry.getKey();
-            }
+        if (availableMask == 0L) {
+            return "Miss";
         }
 
-        // Fallback (should never reach here with proper probability setup)
-        return "Miss";
+        int selected = prizeTable.sample(availableMask, random);
+        return selected == PrizeTable.MISS ? "Miss" : prizeTable.name(selected);
     }
 
     /**
-     * Check if prize has available stock
+     * Check if prize has available stock, prizes known to be sold out are skipped without Redis
      */
     private boolean hasPrizeStock(Long eventId, String prizeName) {
-        String stockKey = String.format(PRIZE_STOCK_KEY, eventId, prizeName);
-        RAtomicLong prizeStock = redissonClient.getAtomicLong(stockKey);
-        return prizeStock.isExists() && prizeStock.get() > 0;
+        if (soldOutRegistry.isPrizeSoldOut(eventId, prizeName)) {
+            return false;
+        }
+
+        Long stock = shardedCounter.getOrNull(String.format(PRIZE_STOCK_KEY, eventId, prizeName));
+        if (stock == null) {
+            return false;
+        }
+        if (stock <= 0) {
+            soldOutRegistry.markPrizeSoldOut(eventId, prizeName);
+            return false;
+        }
+        return true;
     }
 
     /**
-     * Atomically decrement prize stock using RAtomicLong
+     * Atomically decrement prize stock, the shard is picked by user id
      * Returns "Miss" if stock insufficient
      */
-    private String decrementPrizeStock(Long lotteryEventId, String prizeName) {
+    private String decrementPrizeStock(Long lotteryEventId, Long userId, String prizeName) {
         String stockKey = String.format(PRIZE_STOCK_KEY, lotteryEventId, prizeName);
-        RAtomicLong prizeStock = redissonClient.getAtomicLong(stockKey);
-
-        // Atomically decrement stock
-        long newStock = prizeStock.decrementAndGet();
 
-        if (newStock < 0) {
-            // Insufficient stock, rollback
-            prizeStock.incrementAndGet();
+        // Atomically decrement stock, empty shards are rolled back inside
+        if (!shardedCounter.tryDecrement(stockKey, userId)) {
+            soldOutRegistry.markPrizeSoldOut(lotteryEventId, prizeName);
             log.warn("Prize stock insufficient - eventId: {}, prize: {}", lotteryEventId, prizeName);
             return "Miss";
         }
@@ -307,10 +638,15 @@ public class LotteryService {
     }
 
     /**
-     * Asynchronously save win record
+     * Asynchronously save win record, through the batched writer when enabled
      */
-    private void saveWinRecordAsync(Long lotteryEventId, Long userId, String prizeName) {
-        winRecordService.saveWinRecordAsync(lotteryEventId, userId, prizeName)
+    private void saveWinRecordAsync(Long lotteryEventId, Long userId, String prizeName, LocalDateTime wonAt) {
+        if (winRecordWriter.isEnabled()) {
+            winRecordWriter.enqueue(lotteryEventId, userId, List.of(new DrawResult(prizeName, null)), wonAt);
+            return;
+        }
+
+        winRecordService.saveWinRecordAsync(lotteryEventId, userId, prizeName, wonAt)
                 .exceptionally(ex -> {
                     log.error("Failed to save win record - eventId: {}, userId: {}, prize: {}",
                             lotteryEventId, userId, prizeName, ex);
@@ -319,6 +655,24 @@ public class LotteryService {
                 });
     }
 
+    /**
+     * Asynchronously save all wins of a batch draw in one write
+     */
+    private void saveWinRecordsAsync(Long lotteryEventId, Long userId, List<DrawResult> wins,
+                                     LocalDateTime wonAt) {
+        if (winRecordWriter.isEnabled()) {
+            winRecordWriter.enqueue(lotteryEventId, userId, wins, wonAt);
+            return;
+        }
+
+        winRecordService.saveWinRecordsAsync(lotteryEventId, userId, wins, wonAt)
+                .exceptionally(ex -> {
+                    log.error("Failed to save batch win records - eventId: {}, userId: {}, wins: {}",
+                            lotteryEventId, userId, wins, ex);
+                    return null;
+                });
+    }
+
     /**
      * Validate event is active before drawing
      * Throws exception if event is inactive
@@ -330,32 +684,32 @@ public class LotteryService {
     }
 
     /**
-     * Check if lottery event is active
-     * Initialize from database if not exists in Redis
+     * Check if lottery event is active, served from the near-cache
      */
     public boolean isEventActive(Long lotteryEventId) {
-        String key = String.format(EVENT_ACTIVE_KEY, lotteryEventId);
-        RBucket<Boolean> activeStatus = redissonClient.getBucket(key);
-
-        // Return if exists in Redis
-        Boolean isActive = activeStatus.get();
-        if (isActive != null) {
-            return isActive;
-        }
-
-        // Initialize from database with double-check
-        synchronized (this) {
-            isActive = activeStatus.get();
-            if (isActive != null) {
-                return isActive;
-            }
-
-            LotteryEvent event = lotteryEventRepository.findById(lotteryEventId)
-                    .orElseThrow(() -> new LotteryException("Lottery event not found"));
+        return eventConfigCache.get(lotteryEventId, this::loadEventConfig).active();
+    }
 
-            activeStatus.set(event.getIsActive());
-            return event.getIsActive();
-        }
+    /**
+     * Read event active flag from Redis
+     * Initialize from database if not exists in Redis (one node per event loads)
+     */
+    private boolean loadEventActive(Long lotteryEventId) {
+        String key = String.format(EVENT_ACTIVE_KEY, lotteryEventId);
+        // Stored as plain "true"/"false" so draw.lua can read it
+        RBucket<String> activeStatus = redissonClient.getBucket(key, StringCodec.INSTANCE);
+
+        String isActive = initSingleflight.load(lotteryEventId, "active",
+                activeStatus::get,
+                () -> {
+                    LotteryEvent event = lotteryEventRepository.findById(lotteryEventId)
+                            .orElseThrow(() -> new LotteryException("Lottery event not found"));
+
+                    String active = String.valueOf(Boolean.TRUE.equals(event.getIsActive()));
+                    activeStatus.set(active);
+                    return active;
+                });
+        return Boolean.parseBoolean(isActive);
     }
 
     /**
@@ -363,6 +717,6 @@ public class LotteryService {
      */
     private record PrizeData(
             Long eventId,
-            RMap<String, BigDecimal> rateMap
+            PrizeTable prizeTable
     ) {}
 }
\ No newline at end of file
@@ -1,23 +1,35 @@
 package com.practice.lottery.service;
 
+import com.practice.lottery.config.LotteryProperties;
 import com.practice.lottery.dao.entity.LotteryEvent;
 import com.practice.lottery.dao.entity.LotteryPrize;
-import com.practice.lottery.dao.entity.UserLotteryQuota;
 import com.practice.lottery.dao.repository.LotteryEventRepository;
 import com.practice.lottery.dao.repository.LotteryPrizeRepository;
-import com.practice.lottery.dao.repository.UserLotteryQuotaRepository;
 import com.practice.lottery.exception.LotteryException;
 import lombok.Data;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.redisson.api.RAtomicLong;
+import org.redisson.api.RBatch;
+import org.redisson.api.RFuture;
+import org.redisson.api.RLock;
+import org.redisson.api.RSet;
 import org.redisson.api.RedissonClient;
-import org.springframework.scheduling.annotation.Async;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 @Slf4j
 @Service
@@ -26,11 +38,27 @@ public class LotterySyncService {
     private final RedissonClient redissonClient;
     private final LotteryEventRepository lotteryEventRepository;
     private final LotteryPrizeRepository lotteryPrizeRepository;
-    private final UserLotteryQuotaRepository userLotteryQuotaRepository;
-
-    private static final String EVENT_REMAIN_KEY = "lottery:%d:remainAmount";
-    private static final String USER_CHANCE_KEY = "lottery:%d:user:%d:chance";
-    private static final String PRIZE_STOCK_KEY = "lottery:%d:prize:%s:stock";
+    private final EventQuotaLeaseManager quotaLeaseManager;
+    private final ShardedCounter shardedCounter;
+    private final JdbcTemplate jdbcTemplate;
+    private final LotteryProperties lotteryProperties;
+
+    private static final String EVENT_REMAIN_KEY = "lottery:{%d}:remainAmount";
+    private static final String USER_CHANCE_KEY = "lottery:{%d}:user:%d:chance";
+    private static final String PRIZE_STOCK_KEY = "lottery:{%d}:prize:%s:stock";
+    // Members are "{eventId}:{userId}" of users that drew since the last flush
+    private static final String DIRTY_USER_QUOTA_KEY = "lottery:quota:dirty";
+
+    private static final String RECONCILE_LOCK_KEY = "lottery:{%d}:reconcile:lock";
+    // eventId -> epoch millis of the Redis read the last reconcile wrote to database
+    private static final String SYNC_WATERMARK_KEY = "lottery:sync:watermark";
+
+    private static final String UPDATE_USER_QUOTA =
+            "UPDATE user_lottery_quota SET draw_quota = ?, updated_time = ? WHERE uid = ? AND lottery_event_id = ?";
+    private static final String UPDATE_PRIZE_AMOUNT =
+            "UPDATE lottery_prize SET amount = ?, updated_time = ? WHERE id = ?";
+    private static final String UPDATE_EVENT_REMAIN =
+            "UPDATE lottery_event SET remain_amount = ?, updated_time = ? WHERE id = ?";
 
     /**
      * Sync all lottery data from Redis back to database
@@ -67,18 +95,18 @@ public class LotterySyncService {
     }
 
     /**
-     * Sync event remain amount from Redis to database
+     * Sync event remain amount (all shards) from Redis to database
+     * Quota leased by app nodes but not drawn yet is still remaining
      */
     private void syncEventRemainAmount(Long eventId, SyncResult result) {
         String eventKey = String.format(EVENT_REMAIN_KEY, eventId);
-        RAtomicLong eventRemain = redissonClient.getAtomicLong(eventKey);
-
-        if (!eventRemain.isExists()) {
+        Long counter = shardedCounter.getOrNull(eventKey);
+        if (counter == null) {
             log.warn("Event remain key not found in Redis: {}", eventKey);
             return;
         }
 
-        long redisRemain = eventRemain.get();
+        long redisRemain = counter + quotaLeaseManager.getOutstandingUnits(eventId);
 
         LotteryEvent event = lotteryEventRepository.findById(eventId)
                 .orElseThrow(() -> new LotteryException("Event not found: " + eventId));
@@ -98,7 +126,7 @@ public class LotterySyncService {
     }
 
     /**
-     * Sync all prize stocks from Redis to database
+     * Sync all prize stocks (all shards) from Redis to database
      */
     private void syncPrizeStocks(Long eventId, SyncResult result) {
         List<LotteryPrize> prizes = lotteryPrizeRepository.findByLotteryEventId(eventId);
@@ -106,14 +134,13 @@ public class LotterySyncService {
 
         for (LotteryPrize prize : prizes) {
             String stockKey = String.format(PRIZE_STOCK_KEY, eventId, prize.getName());
-            RAtomicLong prizeStock = redissonClient.getAtomicLong(stockKey);
-
-            if (!prizeStock.isExists()) {
+            Long counter = shardedCounter.getOrNull(stockKey);
+            if (counter == null) {
                 log.warn("Prize stock key not found in Redis: {}", stockKey);
                 continue;
             }
 
-            long redisStock = prizeStock.get();
+            long redisStock = counter;
             int dbStock = prize.getAmount();
 
             if (redisStock != dbStock) {
@@ -136,62 +163,169 @@ public class LotterySyncService {
     }
 
     /**
-     * Sync single user quota from Redis to database
+     * Mark a user's chance as changed, written to database by the next flush
+     * Replaces one async sync task per draw: cost now scales with distinct users per interval
      */
-    @Async
-    @Transactional
-    public void syncUserQuota(Long eventId, Long userId) {
-        String userKey = String.format(USER_CHANCE_KEY, eventId, userId);
-        RAtomicLong userChance = redissonClient.getAtomicLong(userKey);
+    public void markUserQuotaDirty(Long eventId, Long userId) {
+        redissonClient.getSet(DIRTY_USER_QUOTA_KEY, StringCodec.INSTANCE)
+                .addAsync(eventId + ":" + userId)
+                .exceptionally(ex -> {
+                    log.error("Failed to mark user quota dirty: userId={}, eventId={}", userId, eventId, ex);
+                    return null;
+                });
+    }
 
-        if (!userChance.isExists()) {
-            log.warn("User chance key not found in Redis: {}", userKey);
-            return;
+    /**
+     * Drain the dirty set: SPOP a batch, read chances with one MGET, write with one JDBC batch
+     * SPOP is atomic, so with several nodes every user is flushed by exactly one of them.
+     */
+    @Scheduled(fixedDelayString = "#{@lotteryProperties.quotaSync.interval.toMillis()}")
+    public void flushDirtyUserQuotas() {
+        RSet<String> dirty = redissonClient.getSet(DIRTY_USER_QUOTA_KEY, StringCodec.INSTANCE);
+        int batchSize = lotteryProperties.getQuotaSync().getBatchSize();
+
+        Set<String> members;
+        while (!(members = dirty.removeRandom(batchSize)).isEmpty()) {
+            try {
+                flushUserQuotas(members);
+            } catch (Exception e) {
+                // Put them back for the next run
+                dirty.addAll(members);
+                log.error("User quota flush failed, {} users requeued", members.size(), e);
+                return;
+            }
+            if (members.size() < batchSize) {
+                return;
+            }
         }
+    }
 
-        long redisChance = userChance.get();
-
+    private void flushUserQuotas(Set<String> members) {
+        Map<String, String> keyByMember = new HashMap<>();
+        for (String member : members) {
+            String[] parts = member.split(":");
+            keyByMember.put(member, String.format(USER_CHANCE_KEY, Long.valueOf(parts[0]), Long.valueOf(parts[1])));
+        }
 
+        // One MGET for the whole batch, users whose key is gone are skipped
+        Map<String, String> chances = redissonClient.getBuckets(StringCodec.INSTANCE)
+                .get(keyByMember.values().toArray(new String[0]));
+
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        List<Object[]> rows = new ArrayList<>(members.size());
+        keyByMember.forEach((member, key) -> {
+            String chance = chances.get(key);
+            if (chance != null) {
+                String[] parts = member.split(":");
+                rows.add(new Object[]{Integer.valueOf(chance), now, Long.valueOf(parts[1]), Long.valueOf(parts[0])});
+            }
+        });
 
-        if (redisChance == 0) {
-            UserLotteryQuota quota = userLotteryQuotaRepository
-                    .findByUidAndLotteryEventId(userId, eventId)
-                    .orElseThrow(() -> new LotteryException("User quota not found"));
+        if (!rows.isEmpty()) {
+            jdbcTemplate.batchUpdate(UPDATE_USER_QUOTA, rows);
+        }
+        log.info("User quotas flushed: {} users", rows.size());
+    }
 
-            int dbChance = quota.getDrawQuota();
-            quota.setDrawQuota((int) redisChance);
-            userLotteryQuotaRepository.save(quota);
+    /**
+     * Write event remain amount and prize stocks of every active event back to database
+     * Bounds how far MySQL lags Redis to one interval, independent of errors triggering an emergency sync.
+     * One node per event at a time; a node that finds the lock taken skips the event this round.
+     */
+    @Scheduled(fixedDelayString = "#{@lotteryProperties.reconcile.interval.toMillis()}")
+    public void reconcileActiveEvents() {
+        if (!lotteryProperties.getReconcile().isEnabled()) {
+            return;
+        }
 
-            log.info("User quota synced: userId={}, eventId={}, {} -> {}",
-                    userId, eventId, dbChance, redisChance);
+        for (LotteryEvent event : lotteryEventRepository.findByIsActiveTrue()) {
+            RLock lock = redissonClient.getLock(String.format(RECONCILE_LOCK_KEY, event.getId()));
+            if (!lock.tryLock()) {
+                continue;
+            }
+            try {
+                reconcileEvent(event);
+            } catch (Exception e) {
+                // Next run reads the counters again
+                log.error("Reconcile failed for eventId: {}", event.getId(), e);
+            } finally {
+                lock.unlock();
+            }
         }
     }
 
     /**
-     * Emergency sync - sync all data for event when error occurs
+     * All counters of the event in one Redis batch, only changed rows written, one JDBC batch for the prizes
+     * Counters missing in Redis (event not initialized yet) leave the database value alone.
      */
-    @Transactional
-    public void emergencySyncAfterError(Long eventId, Long userId, Exception error) {
-        log.error("Emergency sync triggered for eventId: {}, userId: {}, error: {}",
-                eventId, userId, error.getMessage());
+    private void reconcileEvent(LotteryEvent event) {
+        Long eventId = event.getId();
+        List<LotteryPrize> prizes = lotteryPrizeRepository.findByLotteryEventId(eventId);
 
-        try {
-            // Sync event and prizes
-            syncLotteryDataToDatabase(eventId);
+        RBatch batch = redissonClient.createBatch();
+        ShardedCounter.BatchedRead remainRead =
+                shardedCounter.readAsync(batch, String.format(EVENT_REMAIN_KEY, eventId));
+        RFuture<Collection<String>> leasedRead = quotaLeaseManager.readOutstandingUnitsAsync(batch, eventId);
+        Map<Long, ShardedCounter.BatchedRead> stockReads = new HashMap<>();
+        for (LotteryPrize prize : prizes) {
+            stockReads.put(prize.getId(),
+                    shardedCounter.readAsync(batch, String.format(PRIZE_STOCK_KEY, eventId, prize.getName())));
+        }
+        long readAt = System.currentTimeMillis();
+        batch.execute();
 
-            // Sync user quota
-            if (userId != null) {
-                syncUserQuota(eventId, userId);
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        List<Object[]> prizeRows = new ArrayList<>();
+        for (LotteryPrize prize : prizes) {
+            Long redisStock = stockReads.get(prize.getId()).value();
+            if (redisStock != null && redisStock != prize.getAmount().longValue()) {
+                prizeRows.add(new Object[]{Math.toIntExact(redisStock), now, prize.getId()});
             }
+        }
+        if (!prizeRows.isEmpty()) {
+            jdbcTemplate.batchUpdate(UPDATE_PRIZE_AMOUNT, prizeRows);
+        }
 
-            log.info("Emergency sync completed successfully");
+        Long redisRemain = remainRead.value();
+        boolean remainChanged = false;
+        if (redisRemain != null) {
+            // Quota leased by app nodes but not drawn yet is still remaining
+            long remain = redisRemain + EventQuotaLeaseManager.sumUnits(leasedRead.toCompletableFuture().join());
+            if (remain != event.getRemainAmount().longValue()) {
+                jdbcTemplate.update(UPDATE_EVENT_REMAIN, Math.toIntExact(remain), now, eventId);
+                remainChanged = true;
+            }
+        }
 
-        } catch (Exception syncError) {
-            log.error("Emergency sync failed", syncError);
-            // Don't throw exception to avoid cascading failures
+        redissonClient.<String, String>getMap(SYNC_WATERMARK_KEY, StringCodec.INSTANCE)
+                .fastPut(String.valueOf(eventId), String.valueOf(readAt));
+        if (remainChanged || !prizeRows.isEmpty()) {
+            log.info("Reconciled eventId: {}, remain changed: {}, prizes changed: {}",
+                    eventId, remainChanged, prizeRows.size());
         }
     }
 
+    /**
+     * Time of the Redis state last written to database by the reconcile job, null if it never ran
+     */
+    public LocalDateTime getSyncWatermark(Long eventId) {
+        return toSyncWatermark(redissonClient.<String, String>getMap(SYNC_WATERMARK_KEY, StringCodec.INSTANCE)
+                .get(String.valueOf(eventId)));
+    }
+
+    /**
+     * Queue a read of the sync watermark on a caller's batch, convert with {@link #toSyncWatermark}
+     */
+    public RFuture<String> readSyncWatermarkAsync(RBatch batch, Long eventId) {
+        return batch.<String, String>getMap(SYNC_WATERMARK_KEY, StringCodec.INSTANCE)
+                .getAsync(String.valueOf(eventId));
+    }
+
+    public static LocalDateTime toSyncWatermark(String readAt) {
+        return readAt == null
+                ? null
+                : LocalDateTime.ofInstant(Instant.ofEpochMilli(Long.parseLong(readAt)), ZoneId.systemDefault());
+    }
 
     // ========== Result DTOs ==========
 
@@ -0,0 +1,158 @@
+package com.practice.lottery.service;
+
+import com.practice.lottery.config.LotteryProperties;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RBatch;
+import org.redisson.api.RBucket;
+import org.redisson.api.RFuture;
+import org.redisson.api.RLock;
+import org.redisson.api.RMap;
+import org.redisson.api.RScript;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Versioned prize rate hashes of an event, published by an atomic pointer swap
+ * <p>
+ * Every change writes the complete rate hash under a new key lottery:{eventId}:prize:rate:v{n} and then points
+ * lottery:{eventId}:prize:rate:current at it with one SET, so draws (draw.lua reads pointer and hash in the same
+ * script) only ever see a complete old or a complete new version, never an empty or half-updated hash.
+ * Replaced versions expire after old-version-ttl, which covers readers that fetched the pointer just before.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class PrizeRateStore {
+    private final RedissonClient redissonClient;
+    private final LotteryProperties lotteryProperties;
+
+    private static final String RATE_POINTER_KEY = "lottery:{%d}:prize:rate:current";
+    private static final String RATE_VERSION_SEQ_KEY = "lottery:{%d}:prize:rate:seq";
+    private static final String RATE_VERSION_KEY = "lottery:{%d}:prize:rate:v%d";
+    private static final String RATE_LOCK_KEY = "lottery:{%d}:prize:rate:lock";
+
+    // Pointer and hash in one step, so a batch needs no second round trip to follow the pointer
+    private static final String READ_CURRENT_SCRIPT =
+            "local version = redis.call('GET', KEYS[1]) "
+                    + "if not version then return {} end "
+                    + "return redis.call('HGETALL', version)";
+
+    /**
+     * Key of the pointer, passed to draw.lua
+     */
+    public String pointerKey(Long eventId) {
+        return String.format(RATE_POINTER_KEY, eventId);
+    }
+
+    /**
+     * Current rates with the version key they were read from, empty when never published
+     * Versions are never modified once written, so the key identifies exactly these rates.
+     */
+    public Rates read(Long eventId) {
+        String versionKey = getPointer(eventId).get();
+        if (versionKey == null) {
+            return Rates.EMPTY;
+        }
+        return new Rates(versionKey, getRateMap(versionKey).readAllMap());
+    }
+
+    /**
+     * Queue a read of the current rates on a caller's batch, convert with {@link #toRates}
+     */
+    public RFuture<List<Object>> readAsync(RBatch batch, Long eventId) {
+        return batch.getScript(StringCodec.INSTANCE).evalAsync(RScript.Mode.READ_ONLY, READ_CURRENT_SCRIPT,
+                RScript.ReturnType.MULTI, List.<Object>of(pointerKey(eventId)));
+    }
+
+    /**
+     * Flat HGETALL reply (name, rate, name, rate, ...) to prize name -> rate
+     */
+    public static Map<String, String> toRates(List<Object> reply) {
+        Map<String, String> rates = new HashMap<>();
+        for (int i = 0; i + 1 < reply.size(); i += 2) {
+            rates.put(String.valueOf(reply.get(i)), String.valueOf(reply.get(i + 1)));
+        }
+        return rates;
+    }
+
+    /**
+     * Replace all rates of the event
+     */
+    public void publish(Long eventId, Map<String, String> rates) {
+        RLock lock = getLock(eventId);
+        lock.lock();
+        try {
+            swap(eventId, writeVersion(eventId, rates));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Publish rates only if the event has none yet, for lazy initialization from the database
+     */
+    public void publishIfEmpty(Long eventId, Map<String, String> rates) {
+        RLock lock = getLock(eventId);
+        lock.lock();
+        try {
+            if (read(eventId).isEmpty()) {
+                swap(eventId, writeVersion(eventId, rates));
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void delete(Long eventId) {
+        String versionKey = getPointer(eventId).getAndDelete();
+        if (versionKey != null) {
+            getRateMap(versionKey).delete();
+        }
+    }
+
+    private String writeVersion(Long eventId, Map<String, String> rates) {
+        long version = redissonClient.getAtomicLong(String.format(RATE_VERSION_SEQ_KEY, eventId)).incrementAndGet();
+        String versionKey = String.format(RATE_VERSION_KEY, eventId, version);
+        getRateMap(versionKey).putAll(rates);
+        return versionKey;
+    }
+
+    private void swap(Long eventId, String versionKey) {
+        String previous = getPointer(eventId).getAndSet(versionKey);
+        if (previous != null && !previous.equals(versionKey)) {
+            getRateMap(previous).expire(
+                    lotteryProperties.getPrizeRates().getOldVersionTtl().toMillis(), TimeUnit.MILLISECONDS);
+        }
+        log.info("Prize rates published - eventId: {}, version: {}", eventId, versionKey);
+    }
+
+    private RBucket<String> getPointer(Long eventId) {
+        return redissonClient.getBucket(pointerKey(eventId), StringCodec.INSTANCE);
+    }
+
+    private RMap<String, String> getRateMap(String versionKey) {
+        return redissonClient.getMap(versionKey, StringCodec.INSTANCE);
+    }
+
+    private RLock getLock(Long eventId) {
+        return redissonClient.getLock(String.format(RATE_LOCK_KEY, eventId));
+    }
+
+    /**
+     * One rate version: prize name -> rate
+     */
+    public record Rates(String versionKey, Map<String, String> rates) {
+        static final Rates EMPTY = new Rates(null, Map.of());
+
+        public boolean isEmpty() {
+            return rates.isEmpty();
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package com.practice.lottery.service;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.List;
+
+/**
+ * Prize table compiled from an event config: integer weights in basis points plus a Walker/Vose alias table
+ * <p>
+ * The alias table depends on which prizes are in stock, so it is built for an availability bitmask and kept
+ * until availability changes. Sampling is O(1) and allocation-free.
+ * "Miss" takes the probability space left over (1.0 - sum of available rates).
+ */
+public final class PrizeTable {
+
+    public static final int MISS = -1;
+
+    // Rates have at most 2 decimal places, basis points leave room for finer rates
+    private static final int RATE_SCALE = 10000;
+    private static final int MAX_PRIZES = 63;
+
+    private final String[] names;
+    private final int[] weights;
+    private final long allAvailableMask;
+
+    private volatile AliasTable current;
+
+    private PrizeTable(String[] names, int[] weights) {
+        this.names = names;
+        this.weights = weights;
+        this.allAvailableMask = names.length == 0 ? 0L : (1L << names.length) - 1;
+    }
+
+    /**
+     * Compile prize table from prize rates (rate map order)
+     */
+    public static PrizeTable compile(List<EventConfig.Prize> prizes) {
+        if (prizes.size() > MAX_PRIZES) {
+            throw new IllegalArgumentException("At most " + MAX_PRIZES + " prizes per event are supported");
+        }
+
+        String[] names = new String[prizes.size()];
+        int[] weights = new int[prizes.size()];
+        for (int i = 0; i < prizes.size(); i++) {
+            EventConfig.Prize prize = prizes.get(i);
+            names[i] = prize.name();
+            weights[i] = toBasisPoints(prize.rate());
+        }
+        return new PrizeTable(names, weights);
+    }
+
+    public int size() {
+        return names.length;
+    }
+
+    public boolean isEmpty() {
+        return names.length == 0;
+    }
+
+    public String name(int index) {
+        return names[index];
+    }
+
+    public long allAvailableMask() {
+        return allAvailableMask;
+    }
+
+    /**
+     * Pick a prize among the prizes set in availableMask
+     *
+     * @param availableMask bit i set when prize i has stock
+     * @param random        uniform random value in [0, 1)
+     * @return prize index, or {@link #MISS}
+     */
+    public int sample(long availableMask, double random) {
+        AliasTable table = current;
+        if (table == null || table.mask != availableMask) {
+            table = buildAliasTable(availableMask);
+            current = table;
+        }
+        return table.sample(random);
+    }
+
+    /**
+     * Vose's alias method on integer weights
+     * Each weight is scaled by the column count, so every column holds exactly `total` units
+     * and thresholds stay exact integers.
+     */
+    private AliasTable buildAliasTable(long availableMask) {
+        int available = Long.bitCount(availableMask & allAvailableMask);
+
+        long prizeTotal = 0;
+        for (int i = 0; i < names.length; i++) {
+            if ((availableMask & (1L << i)) != 0) {
+                prizeTotal += weights[i];
+            }
+        }
+        // Total rate above 1.0 is rejected by admin validation, normalize instead of failing the draw
+        long total = Math.max(RATE_SCALE, prizeTotal);
+        long missWeight = total - prizeTotal;
+
+        int columns = available + (missWeight > 0 ? 1 : 0);
+        int[] outcomes = new int[columns];
+        long[] scaled = new long[columns];
+
+        int column = 0;
+        for (int i = 0; i < names.length; i++) {
+            if ((availableMask & (1L << i)) != 0) {
+                outcomes[column] = i;
+                scaled[column++] = (long) weights[i] * columns;
+            }
+        }
+        if (missWeight > 0) {
+            outcomes[column] = MISS;
+            scaled[column] = missWeight * columns;
+        }
+
+        long[] threshold = new long[columns];
+        int[] alias = new int[columns];
+        int[] small = new int[columns];
+        int[] large = new int[columns];
+        int smallCount = 0;
+        int largeCount = 0;
+
+        for (int i = 0; i < columns; i++) {
+            if (scaled[i] < total) {
+                small[smallCount++] = i;
+            } else {
+                large[largeCount++] = i;
+            }
+        }
+
+        while (smallCount > 0 && largeCount > 0) {
+            int less = small[--smallCount];
+            int more = large[--largeCount];
+
+            threshold[less] = scaled[less];
+            alias[less] = more;
+
+            scaled[more] = scaled[more] + scaled[less] - total;
+            if (scaled[more] < total) {
+                small[smallCount++] = more;
+            } else {
+                large[largeCount++] = more;
+            }
+        }
+        while (largeCount > 0) {
+            int more = large[--largeCount];
+            threshold[more] = total;
+            alias[more] = more;
+        }
+        while (smallCount > 0) {
+            int less = small[--smallCount];
+            threshold[less] = total;
+            alias[less] = less;
+        }
+
+        return new AliasTable(availableMask, outcomes, alias, threshold, total);
+    }
+
+    private static int toBasisPoints(BigDecimal rate) {
+        if (rate == null) {
+            return 0;
+        }
+        return rate.movePointRight(4).setScale(0, RoundingMode.HALF_UP).intValueExact();
+    }
+
+    private record AliasTable(
+            long mask,
+            int[] outcomes,
+            int[] alias,
+            long[] threshold,
+            long total
+    ) {
+        int sample(double random) {
+            // One uniform value covers both the column and the biased coin
+            long point = (long) (random * outcomes.length * total);
+            int column = (int) (point / total);
+            long coin = point % total;
+            return coin < threshold[column] ? outcomes[column] : outcomes[alias[column]];
+        }
+    }
+}
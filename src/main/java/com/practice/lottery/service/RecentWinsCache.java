@@ -0,0 +1,160 @@
+package com.practice.lottery.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.practice.lottery.config.LotteryProperties;
+import com.practice.lottery.controller.response.WinRecordResponse;
+import com.practice.lottery.dao.entity.LotteryEvent;
+import com.practice.lottery.dao.entity.LotteryPrize;
+import com.practice.lottery.dao.repository.LotteryEventRepository;
+import com.practice.lottery.dao.repository.LotteryPrizeRepository;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.BatchOptions;
+import org.redisson.api.RBatch;
+import org.redisson.api.RListAsync;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.stereotype.Component;
+
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Capped Redis list of each user's latest wins, written in the draw path (lottery.recent-wins.enabled)
+ * <p>
+ * Win records reach MySQL asynchronously, so reading history from the database alone both lags and costs a
+ * query per request. The list lottery:user:{uid}:recent-wins holds the newest wins oldest to newest, trimmed
+ * to size. Event and prize names are resolved from a local per-event cache, dropped on event invalidation.
+ * Entries have no win_record id yet.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class RecentWinsCache {
+    private final RedissonClient redissonClient;
+    private final LotteryEventRepository lotteryEventRepository;
+    private final LotteryPrizeRepository lotteryPrizeRepository;
+    private final EventConfigCache eventConfigCache;
+    private final ObjectMapper objectMapper;
+    private final LotteryProperties lotteryProperties;
+
+    private static final String RECENT_WINS_KEY = "lottery:user:%d:recent-wins";
+
+    private final Map<Long, EventNames> namesCache = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void registerInvalidation() {
+        eventConfigCache.addInvalidationListener(namesCache::remove);
+    }
+
+    public boolean isEnabled() {
+        return lotteryProperties.getRecentWins().isEnabled();
+    }
+
+    public int getSize() {
+        return lotteryProperties.getRecentWins().getSize();
+    }
+
+    /**
+     * Append the wins of one draw, pipelined and not awaited so the draw does not wait on it
+     *
+     * @param wonAt same time the win record is written with, truncated to seconds like the database column
+     */
+    public void record(Long eventId, Long userId, List<DrawResult> wins, LocalDateTime wonAt) {
+        if (!isEnabled() || wins.isEmpty()) {
+            return;
+        }
+
+        long wonAtMillis = wonAt.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        List<String> entries = wins.stream()
+                .map(win -> toJson(new RecentWin(eventId, win.prize(), win.stockLeft(), wonAtMillis)))
+                .toList();
+
+        LotteryProperties.RecentWins config = lotteryProperties.getRecentWins();
+        RBatch batch = redissonClient.createBatch(BatchOptions.defaults().skipResult());
+        RListAsync<String> list = batch.getList(String.format(RECENT_WINS_KEY, userId), StringCodec.INSTANCE);
+        list.addAllAsync(entries);
+        list.trimAsync(-config.getSize(), -1);
+        list.expireAsync(config.getTtl().toMillis(), TimeUnit.MILLISECONDS);
+        batch.executeAsync().exceptionally(ex -> {
+            // History falls back to the database for this win
+            log.warn("Failed to record recent wins - eventId: {}, userId: {}", eventId, userId, ex);
+            return null;
+        });
+    }
+
+    /**
+     * Latest wins of the user, newest first
+     */
+    public List<WinRecordResponse> getRecentWins(Long userId) {
+        if (!isEnabled()) {
+            return List.of();
+        }
+
+        List<String> entries = redissonClient.<String>getList(String.format(RECENT_WINS_KEY, userId), StringCodec.INSTANCE)
+                .readAll();
+        List<WinRecordResponse> wins = new ArrayList<>(entries.size());
+        for (String entry : entries) {
+            RecentWin win = fromJson(entry);
+            EventNames names = namesCache.computeIfAbsent(win.eventId(), this::loadNames);
+            wins.add(WinRecordResponse.builder()
+                    .lotteryEventId(win.eventId())
+                    .eventName(names.eventName())
+                    .uid(userId)
+                    .drawPrizeId(names.prizeIds().get(win.prize()))
+                    .prizeName(win.prize())
+                    .remainPrizeAmount(win.stockLeft())
+                    .createdTime(LocalDateTime.ofInstant(Instant.ofEpochMilli(win.wonAt()), ZoneId.systemDefault()))
+                    .build());
+        }
+        Collections.reverse(wins);
+        return wins;
+    }
+
+    private EventNames loadNames(Long eventId) {
+        String eventName = lotteryEventRepository.findById(eventId)
+                .map(LotteryEvent::getName)
+                .orElse("Unknown Event");
+        Map<String, Long> prizeIds = lotteryPrizeRepository.findByLotteryEventId(eventId).stream()
+                .collect(Collectors.toMap(LotteryPrize::getName, LotteryPrize::getId));
+        return new EventNames(eventName, prizeIds);
+    }
+
+    private String toJson(RecentWin win) {
+        try {
+            return objectMapper.writeValueAsString(win);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private RecentWin fromJson(String entry) {
+        try {
+            return objectMapper.readValue(entry, RecentWin.class);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * One entry of the list
+     *
+     * @param wonAt epoch millis
+     */
+    record RecentWin(Long eventId, String prize, Integer stockLeft, long wonAt) {
+    }
+
+    private record EventNames(String eventName, Map<String, Long> prizeIds) {
+    }
+}
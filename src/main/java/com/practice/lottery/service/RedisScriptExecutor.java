@@ -0,0 +1,65 @@
+package com.practice.lottery.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RScript;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.RedisException;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Runs Lua scripts from classpath:lua/ with EVALSHA
+ * Scripts are loaded once and the SHA is cached, reloaded automatically on NOSCRIPT
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class RedisScriptExecutor {
+    private final RedissonClient redissonClient;
+
+    private static final String SCRIPT_LOCATION = "lua/%s.lua";
+
+    private final Map<String, String> scriptSources = new ConcurrentHashMap<>();
+    private final Map<String, String> scriptShas = new ConcurrentHashMap<>();
+
+    /**
+     * Execute script by name, all keys and arguments are sent as plain strings
+     */
+    public <R> R execute(String scriptName, RScript.ReturnType returnType, List<Object> keys, Object... args) {
+        RScript script = redissonClient.getScript(StringCodec.INSTANCE);
+        String sha = scriptShas.computeIfAbsent(scriptName, name -> script.scriptLoad(loadSource(name)));
+
+        try {
+            return script.evalSha(RScript.Mode.READ_WRITE, sha, returnType, keys, args);
+        } catch (RedisException e) {
+            if (e.getMessage() == null || !e.getMessage().contains("NOSCRIPT")) {
+                throw e;
+            }
+
+            // Redis script cache was flushed (restart / failover), load again and retry once
+            log.warn("Script {} not found in Redis, reloading", scriptName);
+            String reloadedSha = script.scriptLoad(loadSource(scriptName));
+            scriptShas.put(scriptName, reloadedSha);
+            return script.evalSha(RScript.Mode.READ_WRITE, reloadedSha, returnType, keys, args);
+        }
+    }
+
+    private String loadSource(String scriptName) {
+        return scriptSources.computeIfAbsent(scriptName, name -> {
+            try {
+                return new ClassPathResource(String.format(SCRIPT_LOCATION, name))
+                        .getContentAsString(StandardCharsets.UTF_8);
+            } catch (IOException e) {
+                throw new IllegalStateException("Lua script not found: " + name, e);
+            }
+        });
+    }
+}
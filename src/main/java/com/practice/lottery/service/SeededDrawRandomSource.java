@@ -0,0 +1,43 @@
+package com.practice.lottery.service;
+
+import java.util.SplittableRandom;
+import java.util.random.RandomGenerator;
+
+/**
+ * Reproducible random source: the random value of a draw is a pure function of
+ * (seed, eventId, userId, sequence), so outcomes can be replayed for audits and deterministic tests
+ */
+public class SeededDrawRandomSource implements DrawRandomSource {
+
+    // Park-Miller modulus - 1, keeps the Lua side within exact double arithmetic
+    static final long SCRIPT_SEED_BOUND = 2147483646L;
+
+    private final long seed;
+
+    public SeededDrawRandomSource(long seed) {
+        this.seed = seed;
+    }
+
+    @Override
+    public RandomGenerator forDraw(long eventId, long userId, long sequence) {
+        return new SplittableRandom(mix64(userSeed(eventId, userId) ^ sequence));
+    }
+
+    @Override
+    public long scriptSeed(long eventId, long userId) {
+        return (userSeed(eventId, userId) >>> 1) % SCRIPT_SEED_BOUND;
+    }
+
+    private long userSeed(long eventId, long userId) {
+        return mix64(mix64(seed ^ eventId) ^ userId);
+    }
+
+    /**
+     * SplitMix64 finalizer
+     */
+    private static long mix64(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
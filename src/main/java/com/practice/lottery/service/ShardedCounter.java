@@ -0,0 +1,192 @@
+package com.practice.lottery.service;
+
+import com.practice.lottery.config.LotteryProperties;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RAtomicLong;
+import org.redisson.api.RBatch;
+import org.redisson.api.RFuture;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Redis counter split across lottery.counter.shards sub-keys (hot prize stock, event remain amount)
+ * <p>
+ * Shard 0 is the base key itself, shard i is {baseKey:shard:i} with its own hash tag, so on a cluster the
+ * shards land in different slots; with a single shard the legacy keys are used unchanged. Decrements go
+ * to the shard picked by a hint (user id) and probe the other shards when it is empty; reads and syncs
+ * add all shards up. Only the per-step Redisson draw path is sharded: the draw and lease scripts work on
+ * single keys of one event slot, so more than one shard is refused together with them.
+ * Change the shard count only together with refresh-cache, units on dropped shards are not read.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ShardedCounter {
+    private final RedissonClient redissonClient;
+    private final LotteryProperties lotteryProperties;
+
+    private static final String SHARD_KEY = "{%s:shard:%d}";
+
+    @PostConstruct
+    public void validateShards() {
+        if (lotteryProperties.getCounter().getShards() <= 1) {
+            return;
+        }
+        if (lotteryProperties.getDraw().isScriptEnabled()
+                || lotteryProperties.getWinJournal().isEnabled()
+                || lotteryProperties.getQuotaLease().isEnabled()) {
+            throw new IllegalStateException("lottery.counter.shards > 1 is only supported by the per-step draw: "
+                    + "disable lottery.draw.script-enabled, lottery.win-journal.enabled and lottery.quota-lease.enabled");
+        }
+    }
+
+    public int getShards() {
+        return Math.max(1, lotteryProperties.getCounter().getShards());
+    }
+
+    /**
+     * Key of one shard, shard 0 is the base key
+     */
+    public String shardKey(String baseKey, int shard) {
+        // Braces of the event hash tag are dropped, the shard key gets a tag of its own
+        return shard == 0 ? baseKey : String.format(SHARD_KEY, baseKey.replace("{", "").replace("}", ""), shard);
+    }
+
+    /**
+     * Counter is initialized when shard 0 exists (set / init always write every shard)
+     */
+    public boolean isExists(String baseKey) {
+        return redissonClient.getAtomicLong(baseKey).isExists();
+    }
+
+    /**
+     * Total of all shards in one round trip, null when the counter does not exist
+     */
+    public Long getOrNull(String baseKey) {
+        if (getShards() == 1) {
+            String value = redissonClient.<String>getBucket(baseKey, StringCodec.INSTANCE).get();
+            return value != null ? Long.valueOf(value) : null;
+        }
+
+        RBatch batch = redissonClient.createBatch();
+        BatchedRead read = readAsync(batch, baseKey);
+        batch.execute();
+        return read.value();
+    }
+
+    /**
+     * Queue a read of all shards on a caller's batch, for reading many counters in one round trip
+     * The value is available once the batch has been executed.
+     */
+    public BatchedRead readAsync(RBatch batch, String baseKey) {
+        int shards = getShards();
+        // Shard 0 read as a plain bucket: null tells a missing counter apart from 0
+        RFuture<String> base = batch.<String>getBucket(baseKey, StringCodec.INSTANCE).getAsync();
+        List<RFuture<Long>> others = new ArrayList<>(shards - 1);
+        for (int i = 1; i < shards; i++) {
+            others.add(batch.getAtomicLong(shardKey(baseKey, i)).getAsync());
+        }
+        return new BatchedRead(base, others);
+    }
+
+    /**
+     * Overwrite the counter, value is spread evenly across shards
+     */
+    public void set(String baseKey, long value) {
+        writeShards(baseKey, value, false);
+    }
+
+    /**
+     * Initialize the counter only where shards are still missing (race-safe lazy init from database)
+     * A shard drawn down to 0 exists and is left alone.
+     */
+    public void initIfAbsent(String baseKey, long value) {
+        writeShards(baseKey, value, true);
+    }
+
+    /**
+     * Take one unit, starting at the shard picked by hint and probing the others when it is empty
+     *
+     * @return false when every shard is empty
+     */
+    public boolean tryDecrement(String baseKey, long hint) {
+        int shards = getShards();
+        int start = (int) Math.floorMod(hint, (long) shards);
+
+        for (int i = 0; i < shards; i++) {
+            RAtomicLong shard = redissonClient.getAtomicLong(shardKey(baseKey, (start + i) % shards));
+            if (shard.decrementAndGet() >= 0) {
+                return true;
+            }
+            shard.incrementAndGet(); // Rollback, shard is empty
+        }
+        return false;
+    }
+
+    /**
+     * Give one unit back (draw rolled back), any shard keeps the total right
+     */
+    public void increment(String baseKey, long hint) {
+        int shard = (int) Math.floorMod(hint, (long) getShards());
+        redissonClient.getAtomicLong(shardKey(baseKey, shard)).incrementAndGet();
+    }
+
+    public void delete(String baseKey) {
+        int shards = getShards();
+        String[] keys = new String[shards];
+        for (int i = 0; i < shards; i++) {
+            keys[i] = shardKey(baseKey, i);
+        }
+        redissonClient.getKeys().delete(keys);
+    }
+
+    private void writeShards(String baseKey, long value, boolean onlyIfAbsent) {
+        int shards = getShards();
+        if (shards == 1) {
+            if (onlyIfAbsent) {
+                redissonClient.getBucket(baseKey, StringCodec.INSTANCE).setIfAbsent(String.valueOf(value));
+            } else {
+                redissonClient.getAtomicLong(baseKey).set(value);
+            }
+            return;
+        }
+
+        // Shard 0 is written last: it marks the counter as initialized
+        RBatch batch = redissonClient.createBatch();
+        for (int i = shards - 1; i >= 0; i--) {
+            long part = value / shards + (i < value % shards ? 1 : 0);
+            if (onlyIfAbsent) {
+                batch.getBucket(shardKey(baseKey, i), StringCodec.INSTANCE).setIfAbsentAsync(String.valueOf(part));
+            } else {
+                batch.getAtomicLong(shardKey(baseKey, i)).setAsync(part);
+            }
+        }
+        batch.execute();
+        log.debug("Counter {} written across {} shards: {}", baseKey, shards, value);
+    }
+
+    /**
+     * Pending read of one counter queued on a batch
+     */
+    public record BatchedRead(RFuture<String> base, List<RFuture<Long>> otherShards) {
+
+        /**
+         * Total of all shards, null when the counter does not exist
+         */
+        public Long value() {
+            String baseValue = base.toCompletableFuture().join();
+            if (baseValue == null) {
+                return null;
+            }
+            return Long.parseLong(baseValue) + otherShards.stream()
+                    .mapToLong(future -> future.toCompletableFuture().join())
+                    .sum();
+        }
+    }
+}
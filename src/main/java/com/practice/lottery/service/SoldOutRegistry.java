@@ -0,0 +1,158 @@
+package com.practice.lottery.service;
+
+import com.practice.lottery.config.LotteryProperties;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RTopic;
+import org.redisson.api.RedissonClient;
+import org.redisson.api.listener.BaseStatusListener;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Local sold-out flags (event and per-prize) and a bounded cache of exhausted users
+ * <p>
+ * Sold-out is broadcast over the lottery:soldout topic so every node flips its flag, after that
+ * rejected draws are answered without touching Redis. Flags are dropped when the event is invalidated
+ * (admin changed remain amount / stock) and expire after lottery.sold-out.ttl in case a message is lost.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class SoldOutRegistry {
+    private final RedissonClient redissonClient;
+    private final LotteryProperties lotteryProperties;
+    private final EventConfigCache eventConfigCache;
+
+    private static final String SOLD_OUT_TOPIC = "lottery:soldout";
+    // Message is "{eventId}" for the whole event, "{eventId}|{prizeName}" for one prize
+    private static final String PRIZE_SEPARATOR = "|";
+
+    // eventId -> flagged at (epoch millis)
+    private final Map<Long, Long> soldOutEvents = new ConcurrentHashMap<>();
+    // eventId -> prize name -> flagged at
+    private final Map<Long, Map<String, Long>> soldOutPrizes = new ConcurrentHashMap<>();
+    // eventId -> userId -> flagged at, local only (users hit one node at a time)
+    private final Map<Long, Map<Long, Long>> exhaustedUsers = new ConcurrentHashMap<>();
+
+    private int messageListenerId;
+    private int statusListenerId;
+
+    @PostConstruct
+    public void subscribe() {
+        RTopic topic = getTopic();
+        messageListenerId = topic.addListener(String.class, (channel, message) -> onSoldOut(message));
+
+        // Messages published while disconnected are lost, flags are only an optimization so start clean
+        statusListenerId = topic.addListener(new BaseStatusListener() {
+            @Override
+            public void onSubscribe(String channel) {
+                soldOutEvents.clear();
+                soldOutPrizes.clear();
+            }
+        });
+
+        eventConfigCache.addInvalidationListener(this::clear);
+    }
+
+    @PreDestroy
+    public void unsubscribe() {
+        getTopic().removeListener(messageListenerId, statusListenerId);
+    }
+
+    public boolean isEventSoldOut(Long eventId) {
+        return isFresh(soldOutEvents, eventId);
+    }
+
+    public boolean isPrizeSoldOut(Long eventId, String prizeName) {
+        Map<String, Long> prizes = soldOutPrizes.get(eventId);
+        return prizes != null && isFresh(prizes, prizeName);
+    }
+
+    public boolean isUserExhausted(Long eventId, Long userId) {
+        Map<Long, Long> users = exhaustedUsers.get(eventId);
+        return users != null && isFresh(users, userId);
+    }
+
+    /**
+     * Flag the event as sold out on all nodes
+     */
+    public void markEventSoldOut(Long eventId) {
+        if (soldOutEvents.putIfAbsent(eventId, System.currentTimeMillis()) == null) {
+            getTopic().publishAsync(String.valueOf(eventId));
+            log.info("Event sold out, eventId: {}", eventId);
+        }
+    }
+
+    /**
+     * Flag one prize as sold out on all nodes
+     */
+    public void markPrizeSoldOut(Long eventId, String prizeName) {
+        Map<String, Long> prizes = soldOutPrizes.computeIfAbsent(eventId, id -> new ConcurrentHashMap<>());
+        if (prizes.putIfAbsent(prizeName, System.currentTimeMillis()) == null) {
+            getTopic().publishAsync(eventId + PRIZE_SEPARATOR + prizeName);
+            log.info("Prize sold out, eventId: {}, prize: {}", eventId, prizeName);
+        }
+    }
+
+    /**
+     * Remember a user without chances left, bounded by lottery.sold-out.max-exhausted-users per event
+     */
+    public void markUserExhausted(Long eventId, Long userId) {
+        Map<Long, Long> users = exhaustedUsers.computeIfAbsent(eventId, id -> new ConcurrentHashMap<>());
+        if (users.size() >= lotteryProperties.getSoldOut().getMaxExhaustedUsers()) {
+            // Full: drop expired entries, start over if that was not enough
+            users.entrySet().removeIf(entry -> isExpired(entry.getValue()));
+            if (users.size() >= lotteryProperties.getSoldOut().getMaxExhaustedUsers()) {
+                users.clear();
+            }
+        }
+        users.put(userId, System.currentTimeMillis());
+    }
+
+    /**
+     * Forget everything known about an event on this node
+     */
+    public void clear(Long eventId) {
+        soldOutEvents.remove(eventId);
+        soldOutPrizes.remove(eventId);
+        exhaustedUsers.remove(eventId);
+    }
+
+    private void onSoldOut(String message) {
+        int separator = message.indexOf(PRIZE_SEPARATOR);
+        long now = System.currentTimeMillis();
+        if (separator < 0) {
+            soldOutEvents.putIfAbsent(Long.valueOf(message), now);
+        } else {
+            Long eventId = Long.valueOf(message.substring(0, separator));
+            soldOutPrizes.computeIfAbsent(eventId, id -> new ConcurrentHashMap<>())
+                    .putIfAbsent(message.substring(separator + 1), now);
+        }
+    }
+
+    private <K> boolean isFresh(Map<K, Long> flags, K key) {
+        Long flaggedAt = flags.get(key);
+        if (flaggedAt == null) {
+            return false;
+        }
+        if (isExpired(flaggedAt)) {
+            flags.remove(key, flaggedAt);
+            return false;
+        }
+        return true;
+    }
+
+    private boolean isExpired(long flaggedAt) {
+        return System.currentTimeMillis() - flaggedAt > lotteryProperties.getSoldOut().getTtl().toMillis();
+    }
+
+    private RTopic getTopic() {
+        return redissonClient.getTopic(SOLD_OUT_TOPIC, StringCodec.INSTANCE);
+    }
+}
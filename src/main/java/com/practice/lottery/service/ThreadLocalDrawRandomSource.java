@@ -0,0 +1,20 @@
+package com.practice.lottery.service;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.random.RandomGenerator;
+
+/**
+ * Default random source: per-thread generator, no shared seed and no allocation per draw
+ */
+public class ThreadLocalDrawRandomSource implements DrawRandomSource {
+
+    @Override
+    public RandomGenerator forDraw(long eventId, long userId, long sequence) {
+        return ThreadLocalRandom.current();
+    }
+
+    @Override
+    public long scriptSeed(long eventId, long userId) {
+        return ThreadLocalRandom.current().nextLong(SeededDrawRandomSource.SCRIPT_SEED_BOUND);
+    }
+}
@@ -0,0 +1,189 @@
+package com.practice.lottery.service;
+
+import com.practice.lottery.config.LotteryProperties;
+import com.practice.lottery.dao.entity.LotteryEvent;
+import com.practice.lottery.dao.repository.LotteryEventRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.BatchOptions;
+import org.redisson.api.RBatch;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.LongCodec;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Preload all user quotas of an event into Redis, so first draws do not query MySQL one user at a time
+ * Rows are streamed with a JDBC cursor and written with pipelined Redis batches.
+ * The same pass rebuilds the event's eligibility Bloom filter; filters of active events are also rebuilt
+ * on their own every rebuild-interval, so quota granted later stops falling through to the database.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class UserQuotaPreloadService {
+    private final JdbcTemplate jdbcTemplate;
+    private final RedissonClient redissonClient;
+    private final LotteryProperties lotteryProperties;
+    private final EventEligibilityFilter eligibilityFilter;
+    private final ApplicationEventPublisher eventPublisher;
+    private final LotteryEventRepository lotteryEventRepository;
+
+    private static final String USER_CHANCE_KEY = "lottery:{%d}:user:%d:chance";
+    private static final String REBUILD_LOCK_KEY = "lottery:{%d}:eligible:lock";
+
+    private static final String COUNT_EVENT_QUOTAS =
+            "SELECT COUNT(*) FROM user_lottery_quota WHERE lottery_event_id = ?";
+    private static final String SELECT_EVENT_QUOTAS =
+            "SELECT uid, draw_quota FROM user_lottery_quota WHERE lottery_event_id = ?";
+
+    /**
+     * Raised by requestPreload, handled once the requesting transaction has committed
+     */
+    public record PreloadRequested(Long eventId) {
+    }
+
+    /**
+     * Preload the event after the caller's transaction commits (right away when there is none),
+     * so the preload reads the committed activation and never runs for a rolled back one
+     */
+    public void requestPreload(Long eventId) {
+        eventPublisher.publishEvent(new PreloadRequested(eventId));
+    }
+
+    @Async
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onPreloadRequested(PreloadRequested requested) {
+        preloadUserQuotas(requested.eventId());
+    }
+
+    /**
+     * Stream user_lottery_quota rows of the event into lottery:{eventId}:user:{uid}:chance
+     * Keys that already exist are left alone: they hold chances already drawn in Redis.
+     */
+    public void preloadUserQuotas(Long eventId) {
+        scanEventQuotas(eventId, true);
+    }
+
+    /**
+     * Rebuild the eligibility filter of every active event whose filter is older than rebuild-interval
+     * One node per event; the first node to rebuild makes the others skip the event until the next interval.
+     */
+    @Scheduled(fixedDelayString = "#{@lotteryProperties.eligibility.rebuildInterval.toMillis()}")
+    public void rebuildEligibilityFilters() {
+        if (!eligibilityFilter.isEnabled()) {
+            return;
+        }
+
+        Duration interval = lotteryProperties.getEligibility().getRebuildInterval();
+        for (LotteryEvent event : lotteryEventRepository.findByIsActiveTrue()) {
+            RLock lock = redissonClient.getLock(String.format(REBUILD_LOCK_KEY, event.getId()));
+            if (!lock.tryLock()) {
+                continue;
+            }
+            try {
+                if (!eligibilityFilter.isBuiltWithin(event.getId(), interval)) {
+                    scanEventQuotas(event.getId(), false);
+                }
+            } catch (Exception e) {
+                log.error("Eligibility filter rebuild failed - eventId: {}", event.getId(), e);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * One cursor pass over the event's quota rows: rebuilds the filter, and writes chances when writeQuotas
+     */
+    private void scanEventQuotas(Long eventId, boolean writeQuotas) {
+        int batchSize = lotteryProperties.getQuotaPreload().getBatchSize();
+        long startedAt = System.currentTimeMillis();
+        long[] loaded = {0};
+        int[] pending = {0};
+        // Only the filter is written by a rebuild, no batch of chances
+        RBatch[] batch = {writeQuotas ? newBatch() : null};
+        List<Long> batchUserIds = new ArrayList<>(batchSize);
+        String filterName = null;
+
+        try {
+            if (eligibilityFilter.isEnabled()) {
+                Long expectedUsers = jdbcTemplate.queryForObject(COUNT_EVENT_QUOTAS, Long.class, eventId);
+                filterName = eligibilityFilter.startRebuild(eventId, expectedUsers == null ? 0 : expectedUsers);
+            }
+            String rebuildingFilter = filterName;
+
+            jdbcTemplate.query(
+                    connection -> {
+                        PreparedStatement statement = connection.prepareStatement(
+                                SELECT_EVENT_QUOTAS, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                        // MySQL Connector/J streams rows one by one instead of buffering the whole result
+                        statement.setFetchSize(Integer.MIN_VALUE);
+                        statement.setLong(1, eventId);
+                        return statement;
+                    },
+                    (RowCallbackHandler) rs -> {
+                        long uid = rs.getLong("uid");
+                        String key = String.format(USER_CHANCE_KEY, eventId, uid);
+                        long drawQuota = Math.max(0, rs.getInt("draw_quota"));
+
+                        if (writeQuotas) {
+                            // Same encoding as RAtomicLong, 0 is written too so exhausted users never reach MySQL
+                            batch[0].<Long>getBucket(key, LongCodec.INSTANCE).setIfAbsentAsync(drawQuota);
+                        }
+                        batchUserIds.add(uid);
+                        loaded[0]++;
+
+                        if (++pending[0] == batchSize) {
+                            flush(batch[0], rebuildingFilter, batchUserIds);
+                            batch[0] = writeQuotas ? newBatch() : null;
+                            pending[0] = 0;
+                        }
+                    }
+            );
+            if (pending[0] > 0) {
+                flush(batch[0], rebuildingFilter, batchUserIds);
+            }
+            if (filterName != null) {
+                eligibilityFilter.publish(eventId, filterName);
+            }
+
+            log.info("{} - eventId: {}, users: {}, took: {} ms",
+                    writeQuotas ? "Preloaded user quotas" : "Rebuilt eligibility filter",
+                    eventId, loaded[0], System.currentTimeMillis() - startedAt);
+        } catch (Exception e) {
+            // Draws still fall back to lazy initialization per user
+            log.error("User quota preload failed - eventId: {}, loaded: {}", eventId, loaded[0], e);
+            if (filterName != null) {
+                eligibilityFilter.discard(filterName);
+            }
+        }
+    }
+
+    private void flush(RBatch batch, String filterName, List<Long> userIds) {
+        if (batch != null) {
+            batch.execute();
+        }
+        if (filterName != null) {
+            eligibilityFilter.addAll(filterName, userIds);
+        }
+        userIds.clear();
+    }
+
+    private RBatch newBatch() {
+        return redissonClient.createBatch(BatchOptions.defaults().skipResult());
+    }
+}
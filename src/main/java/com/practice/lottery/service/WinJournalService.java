@@ -0,0 +1,183 @@
+package com.practice.lottery.service;
+
+import com.practice.lottery.config.LotteryProperties;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.AutoClaimResult;
+import org.redisson.api.RSet;
+import org.redisson.api.RStream;
+import org.redisson.api.RedissonClient;
+import org.redisson.api.StreamMessageId;
+import org.redisson.api.stream.StreamCreateGroupArgs;
+import org.redisson.api.stream.StreamReadGroupArgs;
+import org.redisson.client.RedisException;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Durable win journal on Redis Streams (lottery.win-journal.enabled)
+ * <p>
+ * draw.lua appends every win to lottery:{eventId}:wins in the same atomic step as the stock decrement, the
+ * stream is registered in lottery:wins:streams by the drawing node first. Every node runs a consumer of one
+ * consumer group that writes WinRecords in JDBC batches and acknowledges entries only after the insert.
+ * Entries left pending by a dead node are claimed after claim-idle. Delivery is at-least-once, the entry id
+ * is stored as win_record.journal_entry_id so a redelivered entry is not inserted or counted twice.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class WinJournalService {
+    private final RedissonClient redissonClient;
+    private final WinRecordWriter winRecordWriter;
+    private final LotteryProperties lotteryProperties;
+
+    private static final String WIN_STREAM_KEY = "lottery:{%d}:wins";
+    private static final String WIN_STREAMS_KEY = "lottery:wins:streams";
+
+    private final String consumerName = UUID.randomUUID().toString();
+    private final Set<String> knownGroups = ConcurrentHashMap.newKeySet();
+    private final Set<Long> registeredEvents = ConcurrentHashMap.newKeySet();
+
+    public boolean isEnabled() {
+        return lotteryProperties.getWinJournal().isEnabled();
+    }
+
+    public String streamKey(Long eventId) {
+        return String.format(WIN_STREAM_KEY, eventId);
+    }
+
+    /**
+     * Register the event's stream for the consumers, once per node per event
+     * Called before the draw appends to it, the set key lives outside the event's hash slot.
+     */
+    public void registerStream(Long eventId) {
+        if (registeredEvents.contains(eventId)) {
+            return;
+        }
+        redissonClient.getSet(WIN_STREAMS_KEY, StringCodec.INSTANCE).add(streamKey(eventId));
+        registeredEvents.add(eventId);
+    }
+
+    /**
+     * Persist new and abandoned journal entries of every registered stream
+     */
+    @Scheduled(fixedDelayString = "#{@lotteryProperties.winJournal.pollInterval.toMillis()}")
+    public void consumeJournal() {
+        if (!isEnabled()) {
+            return;
+        }
+
+        RSet<String> streams = redissonClient.getSet(WIN_STREAMS_KEY, StringCodec.INSTANCE);
+        for (String streamKey : streams.readAll()) {
+            try {
+                consumeStream(streamKey);
+            } catch (Exception e) {
+                // Entries stay pending and are retried on the next run
+                log.error("Failed to consume win journal - stream: {}", streamKey, e);
+            }
+        }
+    }
+
+    private void consumeStream(String streamKey) {
+        LotteryProperties.WinJournal config = lotteryProperties.getWinJournal();
+        RStream<String, String> stream = redissonClient.getStream(streamKey, StringCodec.INSTANCE);
+        ensureGroup(stream, config.getConsumerGroup());
+
+        // Entries another consumer read but never acknowledged (node died mid-batch)
+        AutoClaimResult<String, String> claimed = stream.autoClaim(
+                config.getConsumerGroup(), consumerName,
+                config.getClaimIdle().toMillis(), TimeUnit.MILLISECONDS,
+                StreamMessageId.MIN, config.getBatchSize());
+        persist(streamKey, stream, claimed.getMessages(), true);
+
+        Map<StreamMessageId, Map<String, String>> messages;
+        do {
+            messages = stream.readGroup(config.getConsumerGroup(), consumerName,
+                    StreamReadGroupArgs.neverDelivered().count(config.getBatchSize()));
+            persist(streamKey, stream, messages, false);
+        } while (messages != null && messages.size() >= config.getBatchSize());
+    }
+
+    /**
+     * @param claimed entries delivered before: a batch that fails again is written row by row, parking the rows
+     *                that still fail, so one bad entry does not keep the rest pending forever
+     */
+    private void persist(String streamKey, RStream<String, String> stream,
+                         Map<StreamMessageId, Map<String, String>> messages, boolean claimed) {
+        if (messages == null || messages.isEmpty()) {
+            return;
+        }
+
+        Long eventId = parseEventId(streamKey);
+        List<WinRecordWriter.PendingWin> wins = new ArrayList<>(messages.size());
+        messages.forEach((id, fields) -> wins.add(new WinRecordWriter.PendingWin(
+                eventId,
+                Long.valueOf(fields.get("uid")),
+                fields.get("prize"),
+                fields.get("stockLeft").isEmpty() ? null : Integer.valueOf(fields.get("stockLeft")),
+                wonAt(id, fields),
+                WinRecordWriter.PendingWin.NOT_JOURNALED,
+                eventId + ":" + id
+        )));
+
+        try {
+            winRecordWriter.writeBatch(wins);
+        } catch (Exception e) {
+            if (!claimed) {
+                throw e;
+            }
+            log.error("Failed to write claimed win journal entries, writing row by row - stream: {}, count: {}",
+                    streamKey, wins.size(), e);
+            winRecordWriter.writeEachOrPark(new ArrayList<>(wins));
+        }
+
+        // Only acknowledged after the insert, then dropped from the stream
+        StreamMessageId[] ids = messages.keySet().toArray(new StreamMessageId[0]);
+        stream.ack(lotteryProperties.getWinJournal().getConsumerGroup(), ids);
+        stream.remove(ids);
+        log.info("Win journal persisted - stream: {}, count: {}", streamKey, ids.length);
+    }
+
+    /**
+     * Draw time the drawing node also gave the recent-wins cache, in whole seconds like win_record.created_time
+     */
+    private LocalDateTime wonAt(StreamMessageId id, Map<String, String> fields) {
+        String wonAt = fields.get("wonAt");
+        // Entries journaled before wonAt was added: the entry id is the Redis time of the draw in millis
+        long millis = wonAt != null ? Long.parseLong(wonAt) : id.getId0();
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault())
+                .truncatedTo(ChronoUnit.SECONDS);
+    }
+
+    private void ensureGroup(RStream<String, String> stream, String group) {
+        if (knownGroups.contains(stream.getName())) {
+            return;
+        }
+        try {
+            stream.createGroup(StreamCreateGroupArgs.name(group).id(StreamMessageId.MIN).makeStream());
+        } catch (RedisException e) {
+            if (e.getMessage() == null || !e.getMessage().contains("BUSYGROUP")) {
+                throw e;
+            }
+        }
+        knownGroups.add(stream.getName());
+    }
+
+    private Long parseEventId(String streamKey) {
+        // lottery:{eventId}:wins
+        return Long.valueOf(streamKey.substring(streamKey.indexOf('{') + 1, streamKey.indexOf('}')));
+    }
+}
@@ -0,0 +1,411 @@
+package com.practice.lottery.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.practice.lottery.config.LotteryProperties;
+import com.practice.lottery.controller.response.WinRecordResponse;
+import com.practice.lottery.dao.entity.LotteryEvent;
+import com.practice.lottery.dao.repository.LotteryEventRepository;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Archive of win records of ended events on disk (lottery.archive.enabled)
+ * <p>
+ * Events inactive for after-ended are moved out of win_record into event-{id}-{part}.ndjson.gz: records sorted
+ * by uid, written as independent gzip blocks of block-records rows. The small index.json next to it lists the
+ * uid range and byte range of every block, so reading one user's records decompresses only their blocks, and the
+ * time range of the part, so a page of history only reads the parts that can hold records of that page.
+ * The index is written last and rows are deleted only after it, so an interrupted run is finished by the next.
+ * Every node reads the archive of every event, so enabling it requires lottery.archive.shared-directory, which
+ * confirms the directory is shared between all nodes (or that there is only one).
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class WinRecordArchiveService {
+    private final JdbcTemplate jdbcTemplate;
+    private final LotteryEventRepository lotteryEventRepository;
+    private final RedissonClient redissonClient;
+    private final ObjectMapper objectMapper;
+    private final LotteryProperties lotteryProperties;
+
+    private static final String ARCHIVE_LOCK_KEY = "lottery:{%d}:archive:lock";
+    private static final String DATA_FILE = "event-%d-%d.ndjson.gz";
+    private static final String INDEX_FILE = "event-%d-%d.index.json";
+    private static final String INDEX_SUFFIX = ".index.json";
+
+    private static final String SELECT_EVENT_WIN_RECORDS_AFTER =
+            "SELECT w.id, w.lottery_event_id, e.name AS event_name, w.uid, w.draw_prize_id, p.name AS prize_name, "
+                    + "w.remain_prize_amount, w.created_time "
+                    + "FROM win_record w "
+                    + "LEFT JOIN lottery_event e ON e.id = w.lottery_event_id "
+                    + "LEFT JOIN lottery_prize p ON p.id = w.draw_prize_id "
+                    + "WHERE w.lottery_event_id = ? AND w.id > ? ORDER BY w.uid, w.created_time, w.id";
+
+    private static final String DELETE_ARCHIVED_WIN_RECORDS =
+            "DELETE FROM win_record WHERE lottery_event_id = ? AND id <= ? LIMIT ?";
+
+    // eventId -> archived parts, oldest first
+    private final Map<Long, List<ArchiveIndex>> indexes = new ConcurrentHashMap<>();
+
+    public boolean isEnabled() {
+        return lotteryProperties.getArchive().isEnabled();
+    }
+
+    @PostConstruct
+    public void loadIndexes() {
+        if (isEnabled()) {
+            if (!lotteryProperties.getArchive().isSharedDirectory()) {
+                // Parts archived by one node would be invisible to the others, and their rows already deleted
+                throw new IllegalStateException("lottery.archive.directory must be shared between all nodes, "
+                        + "set lottery.archive.shared-directory=true once it is: " + directory().toAbsolutePath());
+            }
+            refreshIndexes();
+        }
+    }
+
+    /**
+     * Archive every event that ended more than after-ended ago
+     * Runs on every node, which also picks up parts archived by other nodes; one node per event archives.
+     */
+    @Scheduled(fixedDelayString = "#{@lotteryProperties.archive.interval.toMillis()}")
+    public void archiveEndedEvents() {
+        if (!isEnabled()) {
+            return;
+        }
+
+        refreshIndexes();
+        LocalDateTime endedBefore = LocalDateTime.now().minus(lotteryProperties.getArchive().getAfterEnded());
+        for (LotteryEvent event : lotteryEventRepository.findByIsActiveFalseAndUpdatedTimeBefore(endedBefore)) {
+            RLock lock = redissonClient.getLock(String.format(ARCHIVE_LOCK_KEY, event.getId()));
+            if (!lock.tryLock()) {
+                continue;
+            }
+            try {
+                archiveEvent(event.getId());
+            } catch (Exception e) {
+                // Rows are only deleted after the index exists, the next run retries
+                log.error("Win record archive failed - eventId: {}", event.getId(), e);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Newest limit archived records of a user before the cursor position, newest first
+     * Parts starting after the cursor are skipped and the rest read newest first, until no remaining part can
+     * hold one of the newest limit records.
+     *
+     * @param beforeTime createdTime of the cursor position together with beforeId, null for the newest records
+     */
+    public List<WinRecordResponse> findUserRecords(Long uid, LocalDateTime beforeTime, Long beforeId, int limit) {
+        if (!isEnabled()) {
+            return List.of();
+        }
+
+        List<ArchiveIndex> parts = indexes.values().stream()
+                .flatMap(List::stream)
+                .filter(part -> beforeTime == null || part.firstCreatedTime() == null
+                        || !part.firstCreatedTime().isAfter(beforeTime))
+                // Parts indexed before time ranges were kept may hold anything, they are read first
+                .sorted(Comparator.comparing(ArchiveIndex::lastCreatedTime,
+                        Comparator.nullsFirst(Comparator.<LocalDateTime>reverseOrder())))
+                .toList();
+
+        Comparator<WinRecordResponse> newestFirst = Comparator.comparing(WinRecordResponse::getCreatedTime)
+                .thenComparing(WinRecordResponse::getId)
+                .reversed();
+        List<WinRecordResponse> records = new ArrayList<>();
+        for (ArchiveIndex part : parts) {
+            if (records.size() == limit && part.lastCreatedTime() != null
+                    && records.get(limit - 1).getCreatedTime().isAfter(part.lastCreatedTime())) {
+                break;
+            }
+            for (ArchiveBlock block : part.blocks()) {
+                if (block.firstUid() <= uid && uid <= block.lastUid()) {
+                    readBlock(part, block, record -> {
+                        if (uid.equals(record.getUid()) && isBefore(record, beforeTime, beforeId)) {
+                            records.add(record);
+                        }
+                    });
+                }
+            }
+            records.sort(newestFirst);
+            if (records.size() > limit) {
+                records.subList(limit, records.size()).clear();
+            }
+        }
+        return records;
+    }
+
+    private boolean isBefore(WinRecordResponse record, LocalDateTime beforeTime, Long beforeId) {
+        return beforeTime == null
+                || record.getCreatedTime().isBefore(beforeTime)
+                || (record.getCreatedTime().equals(beforeTime) && record.getId() < beforeId);
+    }
+
+    /**
+     * Highest win_record id archived for the event, 0 when nothing is
+     * Rows up to it are archived (or about to be deleted after their index), readers of win_record skip them.
+     */
+    public long archivedMaxId(Long eventId) {
+        if (!isEnabled()) {
+            return 0L;
+        }
+        refreshIndexes();
+        return indexes.getOrDefault(eventId, List.of()).stream().mapToLong(ArchiveIndex::maxId).max().orElse(0L);
+    }
+
+    /**
+     * Every record of the event archived up to maxId, part by part in uid order, one block in memory at a time
+     *
+     * @param maxId result of {@link #archivedMaxId}, parts archived after it was read are left out
+     */
+    public void forEachArchivedRecord(Long eventId, long maxId, Consumer<WinRecordResponse> action) {
+        if (!isEnabled()) {
+            return;
+        }
+        for (ArchiveIndex part : indexes.getOrDefault(eventId, List.of())) {
+            if (part.maxId() > maxId) {
+                continue;
+            }
+            for (ArchiveBlock block : part.blocks()) {
+                readBlock(part, block, action);
+            }
+        }
+    }
+
+    private void archiveEvent(Long eventId) throws IOException {
+        List<ArchiveIndex> parts = indexes.getOrDefault(eventId, List.of());
+        long archivedMaxId = parts.stream().mapToLong(ArchiveIndex::maxId).max().orElse(0L);
+
+        // Left over by a run that stopped between writing the index and deleting
+        deleteArchived(eventId, archivedMaxId);
+
+        // A reactivated event that ended again gets another part
+        long part = System.currentTimeMillis();
+        Path directory = directory();
+        Path dataFile = directory.resolve(String.format(DATA_FILE, eventId, part));
+        Path tmpFile = directory.resolve(dataFile.getFileName() + ".tmp");
+
+        ArchiveIndex index;
+        try (FileChannel channel = FileChannel.open(tmpFile,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            index = writeBlocks(eventId, archivedMaxId, dataFile.getFileName().toString(), channel);
+            channel.force(true);
+        }
+        if (index.records() == 0) {
+            Files.deleteIfExists(tmpFile);
+            return;
+        }
+
+        Files.move(tmpFile, dataFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Path indexFile = directory.resolve(String.format(INDEX_FILE, eventId, part));
+        Path tmpIndex = directory.resolve(indexFile.getFileName() + ".tmp");
+        objectMapper.writeValue(tmpIndex.toFile(), index);
+        Files.move(tmpIndex, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        indexes.computeIfAbsent(eventId, id -> new CopyOnWriteArrayList<>()).add(index);
+
+        long deleted = deleteArchived(eventId, index.maxId());
+        log.info("Win records archived - eventId: {}, part: {}, records: {}, blocks: {}, deleted: {}",
+                eventId, part, index.records(), index.blocks().size(), deleted);
+    }
+
+    private ArchiveIndex writeBlocks(Long eventId, long afterId, String dataFileName, FileChannel channel) {
+        int blockRecords = lotteryProperties.getArchive().getBlockRecords();
+        List<ArchiveBlock> blocks = new ArrayList<>();
+        List<WinRecordResponse> pending = new ArrayList<>(blockRecords);
+        long[] totals = {0, 0};  // records, max id
+        LocalDateTime[] timeRange = {null, null};  // first, last created time
+
+        jdbcTemplate.query(
+                connection -> {
+                    PreparedStatement statement = connection.prepareStatement(
+                            SELECT_EVENT_WIN_RECORDS_AFTER, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                    // MySQL Connector/J streams rows one by one instead of buffering the whole result
+                    statement.setFetchSize(Integer.MIN_VALUE);
+                    statement.setLong(1, eventId);
+                    statement.setLong(2, afterId);
+                    return statement;
+                },
+                (RowCallbackHandler) rs -> {
+                    Timestamp createdTime = rs.getTimestamp("created_time");
+                    pending.add(WinRecordResponse.builder()
+                            .id(rs.getLong("id"))
+                            .lotteryEventId(rs.getLong("lottery_event_id"))
+                            .eventName(rs.getString("event_name"))
+                            .uid(rs.getLong("uid"))
+                            .drawPrizeId(rs.getLong("draw_prize_id"))
+                            .prizeName(rs.getString("prize_name"))
+                            .remainPrizeAmount(rs.getObject("remain_prize_amount", Integer.class))
+                            .createdTime(createdTime != null ? createdTime.toLocalDateTime() : null)
+                            .build());
+                    totals[0]++;
+                    totals[1] = Math.max(totals[1], rs.getLong("id"));
+                    if (createdTime != null) {
+                        LocalDateTime time = createdTime.toLocalDateTime();
+                        timeRange[0] = timeRange[0] == null || time.isBefore(timeRange[0]) ? time : timeRange[0];
+                        timeRange[1] = timeRange[1] == null || time.isAfter(timeRange[1]) ? time : timeRange[1];
+                    }
+                    if (pending.size() == blockRecords) {
+                        blocks.add(writeBlock(channel, pending));
+                        pending.clear();
+                    }
+                }
+        );
+        if (!pending.isEmpty()) {
+            blocks.add(writeBlock(channel, pending));
+        }
+
+        return new ArchiveIndex(eventId, dataFileName, totals[0], totals[1], timeRange[0], timeRange[1], blocks);
+    }
+
+    private ArchiveBlock writeBlock(FileChannel channel, List<WinRecordResponse> records) {
+        try {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            try (OutputStream gzip = new GZIPOutputStream(compressed)) {
+                for (WinRecordResponse record : records) {
+                    gzip.write(objectMapper.writeValueAsBytes(record));
+                    gzip.write('\n');
+                }
+            }
+
+            long offset = channel.position();
+            ByteBuffer buffer = ByteBuffer.wrap(compressed.toByteArray());
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            return new ArchiveBlock(
+                    records.get(0).getUid(),
+                    records.get(records.size() - 1).getUid(),
+                    offset,
+                    compressed.size()
+            );
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void readBlock(ArchiveIndex part, ArchiveBlock block, Consumer<WinRecordResponse> action) {
+        Path dataFile = directory().resolve(part.dataFile());
+        try (FileChannel channel = FileChannel.open(dataFile, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(block.length());
+            long position = block.offset();
+            while (buffer.hasRemaining()) {
+                int read = channel.read(buffer, position);
+                if (read < 0) {
+                    throw new IOException("Truncated archive block at " + block.offset());
+                }
+                position += read;
+            }
+
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                    new GZIPInputStream(new ByteArrayInputStream(buffer.array())), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    action.accept(objectMapper.readValue(line, WinRecordResponse.class));
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read win record archive " + dataFile, e);
+        }
+    }
+
+    private long deleteArchived(Long eventId, long maxId) {
+        if (maxId == 0) {
+            return 0;
+        }
+
+        // Small chunks keep each delete's locks and undo log short
+        int batchSize = lotteryProperties.getArchive().getDeleteBatchSize();
+        long total = 0;
+        int deleted;
+        do {
+            deleted = jdbcTemplate.update(DELETE_ARCHIVED_WIN_RECORDS, eventId, maxId, batchSize);
+            total += deleted;
+        } while (deleted == batchSize);
+        return total;
+    }
+
+    private void refreshIndexes() {
+        Path directory = directory();
+        try {
+            Files.createDirectories(directory);
+            try (Stream<Path> files = Files.list(directory)) {
+                Map<Long, List<ArchiveIndex>> loaded = new ConcurrentHashMap<>();
+                files.filter(path -> path.getFileName().toString().endsWith(INDEX_SUFFIX))
+                        .sorted()
+                        .forEach(path -> {
+                            try {
+                                ArchiveIndex index = objectMapper.readValue(path.toFile(), ArchiveIndex.class);
+                                loaded.computeIfAbsent(index.eventId(), id -> new CopyOnWriteArrayList<>()).add(index);
+                            } catch (IOException e) {
+                                log.warn("Skipping unreadable win record archive index {}", path, e);
+                            }
+                        });
+                indexes.keySet().retainAll(loaded.keySet());
+                indexes.putAll(loaded);
+            }
+        } catch (IOException e) {
+            log.error("Failed to load win record archive indexes from {}", directory, e);
+        }
+    }
+
+    private Path directory() {
+        return Path.of(lotteryProperties.getArchive().getDirectory());
+    }
+
+    /**
+     * Index of one archived part of an event
+     *
+     * @param maxId            highest win_record id in the part, rows up to it are deleted from the table
+     * @param firstCreatedTime oldest created_time in the part, null in indexes written before it was kept
+     * @param lastCreatedTime  newest created_time in the part, null in indexes written before it was kept
+     */
+    record ArchiveIndex(Long eventId, String dataFile, long records, long maxId,
+                        LocalDateTime firstCreatedTime, LocalDateTime lastCreatedTime, List<ArchiveBlock> blocks) {
+    }
+
+    /**
+     * One gzip block, records of firstUid..lastUid at [offset, offset + length) of the data file
+     */
+    record ArchiveBlock(long firstUid, long lastUid, long offset, int length) {
+    }
+}
@@ -0,0 +1,193 @@
+package com.practice.lottery.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.practice.lottery.controller.response.WinRecordResponse;
+import com.practice.lottery.dao.repository.LotteryEventRepository;
+import com.practice.lottery.exception.LotteryException;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+
+/**
+ * Export all win records of an event, straight from a JDBC cursor to the response
+ * Rows are streamed one by one, so memory stays constant however many winners the event has.
+ * Records already moved to {@link WinRecordArchiveService} are streamed from the archive first, block by block.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class WinRecordExportService {
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+    private final LotteryEventRepository lotteryEventRepository;
+    private final WinRecordArchiveService winRecordArchiveService;
+
+    private static final String SELECT_EVENT_WIN_RECORDS =
+            "SELECT w.id, w.lottery_event_id, e.name AS event_name, w.uid, w.draw_prize_id, p.name AS prize_name, "
+                    + "w.remain_prize_amount, w.created_time "
+                    + "FROM win_record w "
+                    + "LEFT JOIN lottery_event e ON e.id = w.lottery_event_id "
+                    + "LEFT JOIN lottery_prize p ON p.id = w.draw_prize_id "
+                    + "WHERE w.lottery_event_id = ? AND w.id > ? ORDER BY w.id";
+
+    private static final String CSV_HEADER =
+            "id,lottery_event_id,event_name,uid,draw_prize_id,prize_name,remain_prize_amount,created_time";
+
+    public enum ExportFormat {
+        CSV("text/csv", "csv"),
+        NDJSON("application/x-ndjson", "ndjson");
+
+        private final String contentType;
+        private final String extension;
+
+        ExportFormat(String contentType, String extension) {
+            this.contentType = contentType;
+            this.extension = extension;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        public String getExtension() {
+            return extension;
+        }
+    }
+
+    public void verifyEventExists(Long eventId) {
+        if (!lotteryEventRepository.existsById(eventId)) {
+            throw new LotteryException("Lottery event not found");
+        }
+    }
+
+    /**
+     * Write every win record of the event to out: archived ones in archive order, then the table's oldest first
+     */
+    public void exportWinRecords(Long eventId, ExportFormat format, OutputStream out) {
+        long startedAt = System.currentTimeMillis();
+        long[] exported = {0};
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        ObjectWriter jsonWriter = objectMapper.writerFor(WinRecordResponse.class);
+
+        try {
+            if (format == ExportFormat.CSV) {
+                writer.write(CSV_HEADER);
+                writer.write('\n');
+            }
+
+            // Rows up to the archived id may still wait for their delete, they are exported from the archive only
+            long archivedMaxId = winRecordArchiveService.archivedMaxId(eventId);
+            winRecordArchiveService.forEachArchivedRecord(eventId, archivedMaxId, record -> {
+                writeRecord(writer, jsonWriter, format, withNameDefaults(record));
+                exported[0]++;
+            });
+
+            jdbcTemplate.query(
+                    connection -> {
+                        PreparedStatement statement = connection.prepareStatement(
+                                SELECT_EVENT_WIN_RECORDS, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                        // MySQL Connector/J streams rows one by one instead of buffering the whole result
+                        statement.setFetchSize(Integer.MIN_VALUE);
+                        statement.setLong(1, eventId);
+                        statement.setLong(2, archivedMaxId);
+                        return statement;
+                    },
+                    (RowCallbackHandler) rs -> {
+                        writeRecord(writer, jsonWriter, format, toResponse(rs));
+                        exported[0]++;
+                    }
+            );
+            writer.flush();
+
+            log.info("Win records exported - eventId: {}, format: {}, rows: {}, took: {} ms",
+                    eventId, format, exported[0], System.currentTimeMillis() - startedAt);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (RuntimeException e) {
+            log.error("Win record export aborted - eventId: {}, exported: {}", eventId, exported[0], e);
+            throw e;
+        }
+    }
+
+    private void writeRecord(Writer writer, ObjectWriter jsonWriter, ExportFormat format, WinRecordResponse record) {
+        try {
+            if (format == ExportFormat.CSV) {
+                writeCsvRow(writer, record);
+            } else {
+                writer.write(jsonWriter.writeValueAsString(record));
+                writer.write('\n');
+            }
+        } catch (IOException e) {
+            // Client went away: abort the query, the cursor is closed with it
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static WinRecordResponse withNameDefaults(WinRecordResponse record) {
+        if (record.getEventName() == null) {
+            record.setEventName("Unknown Event");
+        }
+        if (record.getPrizeName() == null) {
+            record.setPrizeName("Unknown Prize");
+        }
+        return record;
+    }
+
+    private WinRecordResponse toResponse(ResultSet rs) throws SQLException {
+        Timestamp createdTime = rs.getTimestamp("created_time");
+        String eventName = rs.getString("event_name");
+        String prizeName = rs.getString("prize_name");
+
+        return WinRecordResponse.builder()
+                .id(rs.getLong("id"))
+                .lotteryEventId(rs.getLong("lottery_event_id"))
+                .eventName(eventName != null ? eventName : "Unknown Event")
+                .uid(rs.getLong("uid"))
+                .drawPrizeId(rs.getLong("draw_prize_id"))
+                .prizeName(prizeName != null ? prizeName : "Unknown Prize")
+                .remainPrizeAmount(rs.getObject("remain_prize_amount", Integer.class))
+                .createdTime(createdTime != null ? createdTime.toLocalDateTime() : null)
+                .build();
+    }
+
+    private void writeCsvRow(Writer writer, WinRecordResponse record) throws IOException {
+        writer.write(String.valueOf(record.getId()));
+        writer.write(',');
+        writer.write(String.valueOf(record.getLotteryEventId()));
+        writer.write(',');
+        writer.write(csvField(record.getEventName()));
+        writer.write(',');
+        writer.write(String.valueOf(record.getUid()));
+        writer.write(',');
+        writer.write(String.valueOf(record.getDrawPrizeId()));
+        writer.write(',');
+        writer.write(csvField(record.getPrizeName()));
+        writer.write(',');
+        writer.write(record.getRemainPrizeAmount() != null ? String.valueOf(record.getRemainPrizeAmount()) : "");
+        writer.write(',');
+        writer.write(record.getCreatedTime() != null ? record.getCreatedTime().toString() : "");
+        writer.write('\n');
+    }
+
+    private static String csvField(String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+}
@@ -0,0 +1,266 @@
+package com.practice.lottery.service;
+
+import com.practice.lottery.config.LotteryProperties;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+/**
+ * Memory-mapped local journal of win records waiting in {@link WinRecordWriter}'s queue
+ * (lottery.win-writer.journal.enabled)
+ * <p>
+ * Every win gets a sequence number and a fixed 128 byte slot in segment-{n}.dat, the valid flag is written
+ * last. After a batch is committed to MySQL the writer checkpoints its highest sequence in the checkpoint
+ * file, segments below the checkpoint are deleted. On startup slots after the checkpoint are replayed.
+ * Writes go to the page cache, so a process crash loses nothing; data is forced to disk on checkpoint.
+ * A win is written with journal_entry_id local:{node}:{sequence}, the node id kept in the journal directory,
+ * so a batch replayed after its commit but before its checkpoint is skipped rather than inserted twice.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class WinRecordLocalJournal {
+    private final LotteryProperties lotteryProperties;
+
+    private static final int RECORD_SIZE = 128;
+    // valid(1) + eventId(8) + userId(8) + stockLeft(4) + createdTime(8) + name length(2)
+    private static final int MAX_PRIZE_NAME_BYTES = RECORD_SIZE - 31;
+    private static final byte VALID = 1;
+    private static final int NO_STOCK = -1;
+
+    private static final String SEGMENT_FILE = "segment-%012d.dat";
+    private static final String CHECKPOINT_FILE = "checkpoint";
+    private static final String NODE_ID_FILE = "node-id";
+    private static final String ENTRY_ID_PREFIX = "local:";
+
+    private Path directory;
+    private String nodeId;
+    private MappedByteBuffer checkpointBuffer;
+    private MappedByteBuffer segmentBuffer;
+    private long segmentIndex = -1;
+    private long nextSequence;
+    private boolean opened;
+
+    public boolean isEnabled() {
+        return lotteryProperties.getWinWriter().getJournal().isEnabled();
+    }
+
+    /**
+     * Open the journal and return wins written but never checkpointed, oldest first
+     * Called once by WinRecordWriter before it accepts new wins.
+     */
+    public synchronized List<WinRecordWriter.PendingWin> open() {
+        try {
+            directory = Path.of(lotteryProperties.getWinWriter().getJournal().getDirectory());
+            Files.createDirectories(directory);
+            nodeId = readNodeId();
+            checkpointBuffer = map(directory.resolve(CHECKPOINT_FILE), Long.BYTES);
+
+            long checkpoint = checkpointBuffer.getLong(0);
+            List<WinRecordWriter.PendingWin> pending = new ArrayList<>();
+            long sequence = checkpoint + 1;
+            while (true) {
+                WinRecordWriter.PendingWin win = read(sequence);
+                if (win == null) {
+                    break;
+                }
+                pending.add(win);
+                sequence++;
+            }
+
+            nextSequence = sequence;
+            opened = true;
+            log.info("Win record journal opened - directory: {}, checkpoint: {}, pending: {}",
+                    directory, checkpoint, pending.size());
+            return pending;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open win record journal", e);
+        }
+    }
+
+    /**
+     * Whether a win of this prize fits a journal slot, names are limited to that length when prizes are created
+     */
+    public boolean fits(String prizeName) {
+        return prizeName.getBytes(StandardCharsets.UTF_8).length <= MAX_PRIZE_NAME_BYTES;
+    }
+
+    /**
+     * Append a win before it is queued
+     *
+     * @return sequence number of the win, to be checkpointed after commit
+     */
+    public synchronized long append(Long eventId, Long userId, String prizeName, Integer stockLeft,
+                                    LocalDateTime createdTime) {
+        byte[] name = prizeName.getBytes(StandardCharsets.UTF_8);
+        if (name.length > MAX_PRIZE_NAME_BYTES) {
+            throw new IllegalArgumentException("Prize name too long for win record journal: " + prizeName);
+        }
+
+        long sequence = nextSequence++;
+        MappedByteBuffer buffer = segmentFor(sequence);
+        int offset = slotOffset(sequence);
+
+        buffer.putLong(offset + 1, eventId);
+        buffer.putLong(offset + 9, userId);
+        buffer.putInt(offset + 17, stockLeft != null ? stockLeft : NO_STOCK);
+        buffer.putLong(offset + 21, createdTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+        buffer.putShort(offset + 29, (short) name.length);
+        buffer.put(offset + 31, name);
+        // Valid flag last: a slot is never replayed half written
+        buffer.put(offset, VALID);
+        return sequence;
+    }
+
+    /**
+     * journal_entry_id of the win at this sequence, the same when it is replayed after a restart
+     */
+    public String entryId(long sequence) {
+        return ENTRY_ID_PREFIX + nodeId + ":" + sequence;
+    }
+
+    /**
+     * Everything up to and including sequence is in MySQL
+     */
+    public synchronized void checkpoint(long sequence) {
+        if (!opened || sequence <= checkpointBuffer.getLong(0)) {
+            return;
+        }
+
+        if (segmentBuffer != null) {
+            segmentBuffer.force();
+        }
+        checkpointBuffer.putLong(0, sequence);
+        checkpointBuffer.force();
+        deleteSegmentsBefore(segmentOf(sequence + 1));
+    }
+
+    @PreDestroy
+    public synchronized void close() {
+        if (opened) {
+            if (segmentBuffer != null) {
+                segmentBuffer.force();
+            }
+            checkpointBuffer.force();
+            opened = false;
+        }
+    }
+
+    private WinRecordWriter.PendingWin read(long sequence) throws IOException {
+        Path segment = directory.resolve(String.format(SEGMENT_FILE, segmentOf(sequence)));
+        if (!Files.exists(segment)) {
+            return null;
+        }
+
+        MappedByteBuffer buffer = segmentFor(sequence);
+        int offset = slotOffset(sequence);
+        if (buffer.get(offset) != VALID) {
+            return null;
+        }
+
+        int stockLeft = buffer.getInt(offset + 17);
+        byte[] name = new byte[buffer.getShort(offset + 29)];
+        buffer.get(offset + 31, name);
+
+        return new WinRecordWriter.PendingWin(
+                buffer.getLong(offset + 1),
+                buffer.getLong(offset + 9),
+                new String(name, StandardCharsets.UTF_8),
+                stockLeft == NO_STOCK ? null : stockLeft,
+                LocalDateTime.ofInstant(Instant.ofEpochMilli(buffer.getLong(offset + 21)), ZoneId.systemDefault()),
+                sequence,
+                entryId(sequence)
+        );
+    }
+
+    /**
+     * Node id of this journal, created with the directory: sequences restart in a new directory, the id too
+     */
+    private String readNodeId() throws IOException {
+        Path file = directory.resolve(NODE_ID_FILE);
+        if (Files.exists(file)) {
+            return Files.readString(file, StandardCharsets.UTF_8).trim();
+        }
+
+        String id = UUID.randomUUID().toString().replace("-", "");
+        Path temp = directory.resolve(NODE_ID_FILE + ".tmp");
+        Files.writeString(temp, id, StandardCharsets.UTF_8);
+        Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE);
+        return id;
+    }
+
+    private MappedByteBuffer segmentFor(long sequence) {
+        long index = segmentOf(sequence);
+        if (index != segmentIndex) {
+            if (segmentBuffer != null) {
+                segmentBuffer.force();
+            }
+            try {
+                Path segment = directory.resolve(String.format(SEGMENT_FILE, index));
+                segmentBuffer = map(segment, (long) segmentRecords() * RECORD_SIZE);
+                segmentIndex = index;
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to map win record journal segment " + index, e);
+            }
+        }
+        return segmentBuffer;
+    }
+
+    private void deleteSegmentsBefore(long index) {
+        try (Stream<Path> files = Files.list(directory)) {
+            files.filter(path -> path.getFileName().toString().startsWith("segment-"))
+                    .filter(path -> parseSegmentIndex(path) < index)
+                    .forEach(path -> {
+                        try {
+                            Files.deleteIfExists(path);
+                        } catch (IOException e) {
+                            log.warn("Failed to delete win record journal segment {}", path, e);
+                        }
+                    });
+        } catch (IOException e) {
+            log.warn("Failed to list win record journal directory {}", directory, e);
+        }
+    }
+
+    private long parseSegmentIndex(Path path) {
+        String fileName = path.getFileName().toString();
+        return Long.parseLong(fileName.substring("segment-".length(), fileName.length() - ".dat".length()));
+    }
+
+    private long segmentOf(long sequence) {
+        return sequence / segmentRecords();
+    }
+
+    private int slotOffset(long sequence) {
+        return (int) (sequence % segmentRecords()) * RECORD_SIZE;
+    }
+
+    private int segmentRecords() {
+        return lotteryProperties.getWinWriter().getJournal().getSegmentRecords();
+    }
+
+    private static MappedByteBuffer map(Path file, long size) throws IOException {
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+    }
+}
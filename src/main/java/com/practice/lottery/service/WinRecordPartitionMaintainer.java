@@ -0,0 +1,70 @@
+package com.practice.lottery.service;
+
+import com.practice.lottery.config.LotteryProperties;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+
+/**
+ * Keeps monthly partitions of win_record ahead of the clock (lottery.win-record-partition.enabled)
+ * <p>
+ * With win_record partitioned by month (see schema.sql) new rows land in p_future until their month gets its
+ * own partition. This splits p_future for the current and the next months-ahead months, so a user's history
+ * and an event's archival prune to the months they touch. Does nothing while the table is not partitioned.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class WinRecordPartitionMaintainer {
+    private final JdbcTemplate jdbcTemplate;
+    private final LotteryProperties lotteryProperties;
+
+    private static final String FUTURE_PARTITION = "p_future";
+    private static final DateTimeFormatter PARTITION_MONTH = DateTimeFormatter.ofPattern("yyyyMM");
+
+    private static final String SELECT_PARTITIONS =
+            "SELECT PARTITION_NAME FROM information_schema.PARTITIONS "
+                    + "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'win_record' AND PARTITION_NAME IS NOT NULL";
+
+    private static final String SPLIT_FUTURE_PARTITION =
+            "ALTER TABLE win_record REORGANIZE PARTITION p_future INTO ("
+                    + "PARTITION %s VALUES LESS THAN (UNIX_TIMESTAMP('%s 00:00:00')), "
+                    + "PARTITION p_future VALUES LESS THAN MAXVALUE)";
+
+    @Scheduled(fixedDelayString = "#{@lotteryProperties.winRecordPartition.checkInterval.toMillis()}")
+    public void ensurePartitions() {
+        if (!lotteryProperties.getWinRecordPartition().isEnabled()) {
+            return;
+        }
+
+        try {
+            List<String> partitions = jdbcTemplate.queryForList(SELECT_PARTITIONS, String.class);
+            if (!partitions.contains(FUTURE_PARTITION)) {
+                log.debug("win_record is not partitioned by month, nothing to maintain");
+                return;
+            }
+
+            YearMonth current = YearMonth.now();
+            for (int i = 0; i <= lotteryProperties.getWinRecordPartition().getMonthsAhead(); i++) {
+                YearMonth month = current.plusMonths(i);
+                String name = "p" + month.format(PARTITION_MONTH);
+                if (partitions.contains(name)) {
+                    continue;
+                }
+
+                // Rows of the month move out of p_future, which is still small ahead of the month
+                jdbcTemplate.execute(String.format(SPLIT_FUTURE_PARTITION, name, month.plusMonths(1).atDay(1)));
+                log.info("win_record partition added: {}", name);
+            }
+        } catch (Exception e) {
+            // Another node may be splitting at the same time, the next run checks again
+            log.warn("win_record partition maintenance failed", e);
+        }
+    }
+}
@@ -1,23 +1,30 @@
 package com.practice.lottery.service;
+import com.practice.lottery.controller.response.WinRecordPageResponse;
 import com.practice.lottery.controller.response.WinRecordResponse;
-import com.practice.lottery.dao.entity.LotteryEvent;
 import com.practice.lottery.dao.entity.LotteryPrize;
 import com.practice.lottery.dao.entity.WinRecord;
-import com.practice.lottery.dao.repository.LotteryEventRepository;
 import com.practice.lottery.dao.repository.LotteryPrizeRepository;
 import com.practice.lottery.dao.repository.WinRecordRepository;
+import com.practice.lottery.exception.LotteryException;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.redisson.api.RAtomicLong;
-import org.redisson.api.RedissonClient;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Slf4j
 @Service
@@ -25,98 +32,296 @@ import java.util.concurrent.CompletableFuture;
 public class WinRecordService {
     private final WinRecordRepository winRecordRepository;
     private final LotteryPrizeRepository lotteryPrizeRepository;
-    private final LotteryEventRepository lotteryEventRepository;
-    private final RedissonClient redissonClient;
+    private final ShardedCounter shardedCounter;
+    private final RecentWinsCache recentWinsCache;
+    private final WinStatsService winStatsService;
+    private final WinRecordArchiveService winRecordArchiveService;
 
-    private static final String PRIZE_STOCK_KEY = "lottery:%d:prize:%s:stock";
+    private static final String PRIZE_STOCK_KEY = "lottery:{%d}:prize:%s:stock";
+    private static final String CURSOR_SEPARATOR = "_";
+    // Cursor id of a page ending with cached wins: ids are positive, so the next page starts at the earlier second
+    private static final long NO_RECORD_ID = 0L;
 
     /**
      * Asynchronously save win record to database
      * Uses new transaction to avoid blocking main lottery flow
+     *
+     * @param createdTime time of the draw, in whole seconds
      */
     @Async
     @Transactional(propagation = Propagation.REQUIRES_NEW)
     public CompletableFuture<WinRecord> saveWinRecordAsync(
             Long eventId,
             Long userId,
-            String prizeName
+            String prizeName,
+            LocalDateTime createdTime
     ) {
         try {
             log.info("Async saving win record: eventId={}, userId={}, prize={}",
                     eventId, userId, prizeName);
 
-            // Get prize info
-            LotteryPrize prize = lotteryPrizeRepository
-                    .findByLotteryEventIdAndName(eventId, prizeName)
-                    .orElseThrow(() -> new IllegalArgumentException("Prize not found: " + prizeName));
+            return CompletableFuture.completedFuture(insertWinRecord(eventId, userId, prizeName, createdTime));
 
-            // Get current stock from Redis
-            String stockKey = String.format(PRIZE_STOCK_KEY, eventId, prizeName);
-            RAtomicLong prizeStock = redissonClient.getAtomicLong(stockKey);
-            Integer remainStock = prizeStock.isExists() ?
-                    Math.toIntExact(prizeStock.get()) : prize.getAmount();
+        } catch (Exception e) {
+            log.error("Failed to save win record asynchronously", e);
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Save win record on the caller's thread, for when the async executor rejects the save
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public WinRecord saveWinRecord(Long eventId, Long userId, String prizeName, LocalDateTime createdTime) {
+        return insertWinRecord(eventId, userId, prizeName, createdTime);
+    }
+
+    private WinRecord insertWinRecord(Long eventId, Long userId, String prizeName, LocalDateTime createdTime) {
+        // Get prize info
+        LotteryPrize prize = lotteryPrizeRepository
+                .findByLotteryEventIdAndName(eventId, prizeName)
+                .orElseThrow(() -> new IllegalArgumentException("Prize not found: " + prizeName));
+
+        // Get current stock from Redis
+        String stockKey = String.format(PRIZE_STOCK_KEY, eventId, prizeName);
+        Long redisStock = shardedCounter.getOrNull(stockKey);
+        Integer remainStock = redisStock != null ? Math.toIntExact(redisStock) : prize.getAmount();
+
+        // Create win record
+        WinRecord record = WinRecord.builder()
+                .lotteryEventId(eventId)
+                .uid(userId)
+                .drawPrizeId(prize.getId())
+                .remainPrizeAmount(remainStock)
+                .createdTime(createdTime)
+                .build();
+
+        WinRecord saved = winRecordRepository.save(record);
+        winStatsService.addWins(List.of(saved));
+
+        log.info("Win record saved successfully: recordId={}", saved.getId());
+
+        return saved;
+    }
 
-            // Create win record
-            WinRecord record = WinRecord.builder()
-                    .lotteryEventId(eventId)
-                    .uid(userId)
-                    .drawPrizeId(prize.getId())
-                    .remainPrizeAmount(remainStock)
-                    .createdTime(LocalDateTime.now())
-                    .build();
+    /**
+     * Asynchronously save all wins of a batch draw in one transaction
+     * Prizes are looked up once per batch, remain amount comes from the draw result
+     *
+     * @param createdTime time of the draw, in whole seconds
+     */
+    @Async
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public CompletableFuture<List<WinRecord>> saveWinRecordsAsync(
+            Long eventId,
+            Long userId,
+            List<DrawResult> wins,
+            LocalDateTime createdTime
+    ) {
+        try {
+            log.info("Async saving batch win records: eventId={}, userId={}, count={}",
+                    eventId, userId, wins.size());
 
-            WinRecord saved = winRecordRepository.save(record);
+            Map<String, LotteryPrize> prizeByName = lotteryPrizeRepository.findByLotteryEventId(eventId)
+                    .stream()
+                    .collect(Collectors.toMap(LotteryPrize::getName, Function.identity()));
 
-            log.info("Win record saved successfully: recordId={}", saved.getId());
+            List<WinRecord> records = wins.stream()
+                    .map(win -> {
+                        LotteryPrize prize = prizeByName.get(win.prize());
+                        if (prize == null) {
+                            throw new IllegalArgumentException("Prize not found: " + win.prize());
+                        }
+
+                        return WinRecord.builder()
+                                .lotteryEventId(eventId)
+                                .uid(userId)
+                                .drawPrizeId(prize.getId())
+                                .remainPrizeAmount(win.stockLeft() != null ? win.stockLeft() : prize.getAmount())
+                                .createdTime(createdTime)
+                                .build();
+                    })
+                    .toList();
+
+            List<WinRecord> saved = winRecordRepository.saveAll(records);
+            winStatsService.addWins(saved);
+
+            log.info("Batch win records saved successfully: eventId={}, userId={}, count={}",
+                    eventId, userId, saved.size());
 
             return CompletableFuture.completedFuture(saved);
 
         } catch (Exception e) {
-            log.error("Failed to save win record asynchronously", e);
+            log.error("Failed to save batch win records asynchronously", e);
             return CompletableFuture.failedFuture(e);
         }
     }
 
     /**
-     * Get all win records for a user
+     * Get all win records for a user, names joined in one query, archived ones included
      */
     @Transactional(readOnly = true)
     public List<WinRecordResponse> getUserWinRecords(Long userId) {
-        List<WinRecord> records = winRecordRepository.findByUid(userId);
-        return convertToResponseList(records);
+        return withArchived(userId, winRecordRepository.findResponsesByUid(userId), null, null, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Get one page of a user's win records, newest first
+     * The cursor is the (createdTime, id) of the last record of the previous page, so a page costs the same
+     * index range scan however deep it is.
+     * The first page comes from {@link RecentWinsCache} when it holds enough wins, otherwise from the database
+     * merged with cached wins not written yet, so a user always sees the win they just got.
+     * Records of archived events are merged in from {@link WinRecordArchiveService}.
+     * Not transactional, so a page served from the cache takes a database connection only to check for older records.
+     */
+    public WinRecordPageResponse getUserWinRecordPage(Long userId, String cursor, int size) {
+        if (cursor != null && !cursor.isBlank()) {
+            String[] position = decodeCursor(cursor);
+            LocalDateTime beforeTime = LocalDateTime.parse(position[0]);
+            Long beforeId = Long.valueOf(position[1]);
+            List<WinRecordResponse> records = winRecordRepository.findResponsePageByUidBefore(
+                    userId, beforeTime, beforeId, pageLimit(size));
+            return toPage(withArchived(userId, records, beforeTime, beforeId, size + 1), size);
+        }
+
+        List<WinRecordResponse> recent = recentWinsCache.getRecentWins(userId);
+        WinRecordPageResponse cachedPage = toCachedPage(userId, recent, size);
+        if (cachedPage != null) {
+            return cachedPage;
+        }
+
+        List<WinRecordResponse> records = withArchived(
+                userId, winRecordRepository.findResponsePageByUid(userId, pageLimit(size)), null, null, size + 1);
+        // Cached wins newer than anything stored are still on their way to the database
+        LocalDateTime newestWritten = records.isEmpty() ? null : records.get(0).getCreatedTime();
+        List<WinRecordResponse> merged = new ArrayList<>(recent.size() + records.size());
+        recent.stream()
+                .filter(win -> newestWritten == null || win.getCreatedTime().isAfter(newestWritten))
+                .forEach(merged::add);
+        merged.addAll(records);
+        return toPage(merged, size);
     }
 
     /**
-     * Convert WinRecord to WinRecordResponse
+     * Merge the user's archived records before the cursor position into a page from the database
+     * Both sides hold their newest limit records before the cursor, so the newest limit of the merge are exact.
      */
-    private WinRecordResponse convertToResponse(WinRecord record) {
-        // Fetch prize details
-        LotteryPrize prize = lotteryPrizeRepository.findById(record.getDrawPrizeId())
-                .orElse(null);
-
-        // Fetch event details
-        LotteryEvent event = lotteryEventRepository.findById(record.getLotteryEventId())
-                .orElse(null);
-
-        return WinRecordResponse.builder()
-                .id(record.getId())
-                .lotteryEventId(record.getLotteryEventId())
-                .eventName(event != null ? event.getName() : "Unknown Event")
-                .uid(record.getUid())
-                .drawPrizeId(record.getDrawPrizeId())
-                .prizeName(prize != null ? prize.getName() : "Unknown Prize")
-                .remainPrizeAmount(record.getRemainPrizeAmount())
-                .createdTime(record.getCreatedTime())
+    private List<WinRecordResponse> withArchived(Long userId, List<WinRecordResponse> records,
+                                                 LocalDateTime beforeTime, Long beforeId, int limit) {
+        List<WinRecordResponse> archived = winRecordArchiveService.findUserRecords(userId, beforeTime, beforeId, limit);
+        if (archived.isEmpty()) {
+            return records;
+        }
+
+        List<WinRecordResponse> merged = new ArrayList<>(records);
+        merged.addAll(archived);
+        merged.sort(Comparator.comparing(WinRecordResponse::getCreatedTime)
+                .thenComparing(WinRecordResponse::getId)
+                .reversed());
+        return merged;
+    }
+
+    /**
+     * First page served from the cache alone, or null if it does not hold enough wins
+     * A full cache may have trimmed older wins of its oldest second, so that second is left to the database.
+     * Only a page that takes every cached win asks the database whether anything older exists.
+     */
+    private WinRecordPageResponse toCachedPage(Long userId, List<WinRecordResponse> recent, int size) {
+        List<WinRecordResponse> complete = recent.size() < recentWinsCache.getSize()
+                ? recent
+                : withoutOldestSecond(recent);
+        if (complete.size() < size) {
+            return null;
+        }
+
+        int end = pageEnd(complete, size);
+        List<WinRecordResponse> page = complete.subList(0, end);
+        LocalDateTime last = page.get(page.size() - 1).getCreatedTime();
+        boolean hasMore = end < recent.size() || winRecordRepository.existsByUidAndCreatedTimeBefore(userId, last);
+        return WinRecordPageResponse.builder()
+                .records(page)
+                .hasMore(hasMore)
+                .nextCursor(hasMore ? encodeCursor(last, NO_RECORD_ID) : null)
                 .build();
     }
 
+    private List<WinRecordResponse> withoutOldestSecond(List<WinRecordResponse> recent) {
+        int end = recent.size();
+        LocalDateTime oldest = recent.get(end - 1).getCreatedTime();
+        while (end > 0 && recent.get(end - 1).getCreatedTime().equals(oldest)) {
+            end--;
+        }
+        return recent.subList(0, end);
+    }
+
     /**
-     * Convert list of WinRecord to list of WinRecordResponse
+     * Number of records on a page of about size, never ending inside a second with cached wins left over
+     * Cached wins have no id, so the cursor after one continues strictly before its second: the page stops
+     * before that second, or takes all of it when the second alone fills the page.
      */
-    private List<WinRecordResponse> convertToResponseList(List<WinRecord> records) {
-        return records.stream()
-                .map(this::convertToResponse)
-                .toList();
+    private int pageEnd(List<WinRecordResponse> records, int size) {
+        if (records.size() <= size) {
+            return records.size();
+        }
+
+        WinRecordResponse boundary = records.get(size - 1);
+        LocalDateTime second = boundary.getCreatedTime();
+        if (boundary.getId() != null || !isCachedIn(records.get(size), second)) {
+            return size;
+        }
+
+        int end = size;
+        while (end > 0 && isCachedIn(records.get(end - 1), second)) {
+            end--;
+        }
+        if (end > 0) {
+            return end;
+        }
+        end = size;
+        while (end < records.size() && isCachedIn(records.get(end), second)) {
+            end++;
+        }
+        return end;
     }
 
+    private boolean isCachedIn(WinRecordResponse record, LocalDateTime second) {
+        return record.getId() == null && record.getCreatedTime().equals(second);
+    }
+
+    private WinRecordPageResponse toPage(List<WinRecordResponse> records, int size) {
+        int end = pageEnd(records, size);
+        boolean hasMore = end < records.size();
+        List<WinRecordResponse> page = records.subList(0, end);
+        WinRecordResponse last = hasMore ? page.get(page.size() - 1) : null;
+        return WinRecordPageResponse.builder()
+                .records(page)
+                .hasMore(hasMore)
+                // Cached wins have no id yet: continue strictly before their second, all of it is on the page
+                .nextCursor(last != null
+                        ? encodeCursor(last.getCreatedTime(), last.getId() != null ? last.getId() : NO_RECORD_ID)
+                        : null)
+                .build();
+    }
+
+    // One extra row tells whether there is a next page
+    private Pageable pageLimit(int size) {
+        return PageRequest.of(0, size + 1);
+    }
+
+    private String encodeCursor(LocalDateTime createdTime, long id) {
+        String position = createdTime + CURSOR_SEPARATOR + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(position.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private String[] decodeCursor(String cursor) {
+        try {
+            String position = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            String[] parts = position.split(CURSOR_SEPARATOR);
+            LocalDateTime.parse(parts[0]);
+            Long.parseLong(parts[1]);
+            return parts;
+        } catch (RuntimeException e) {
+            throw new LotteryException("Invalid cursor");
+        }
+    }
 }
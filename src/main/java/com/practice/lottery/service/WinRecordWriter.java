@@ -0,0 +1,445 @@
+package com.practice.lottery.service;
+
+import com.practice.lottery.config.LotteryProperties;
+import com.practice.lottery.dao.entity.LotteryPrize;
+import com.practice.lottery.dao.entity.WinRecord;
+import com.practice.lottery.dao.repository.LotteryPrizeRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Write-behind pipeline for win records (lottery.win-writer.enabled)
+ * <p>
+ * Wins are put on a bounded in-memory queue and a single writer thread group-commits them with
+ * JdbcTemplate.batchUpdate, once batch-size records are waiting or flush-interval has passed.
+ * Prize name -> id is cached per event and dropped on event invalidation. When the queue is full
+ * the win falls back to the per-record async save in {@link WinRecordService}, or a synchronous save when
+ * the async executor is saturated too. A batch that keeps failing is written row by row, a row that still
+ * fails is parked in win_record_dead_letter for an operator to replay, so one bad row never stalls the writer.
+ * With the local journal enabled every queued win is first appended to {@link WinRecordLocalJournal},
+ * checkpointed after its batch commits and replayed on the next startup if the node died before that.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class WinRecordWriter {
+    private final JdbcTemplate jdbcTemplate;
+    private final LotteryPrizeRepository lotteryPrizeRepository;
+    private final WinRecordService winRecordService;
+    private final ShardedCounter shardedCounter;
+    private final EventConfigCache eventConfigCache;
+    private final LotteryProperties lotteryProperties;
+    private final WinRecordLocalJournal localJournal;
+    private final WinStatsService winStatsService;
+    private final TransactionTemplate transactionTemplate;
+
+    private static final String PRIZE_STOCK_KEY = "lottery:{%d}:prize:%s:stock";
+    // Attempts at the whole batch before it is written row by row
+    private static final int MAX_WRITE_ATTEMPTS = 3;
+    // Length of the failure message kept with a parked win
+    private static final int MAX_ERROR_LENGTH = 512;
+    // Retry delay grows with the attempt up to this many flush intervals
+    private static final int MAX_RETRY_BACKOFF = 50;
+
+    private static final String INSERT_WIN_RECORD =
+            "INSERT INTO win_record (lottery_event_id, uid, draw_prize_id, remain_prize_amount, created_time, "
+                    + "journal_entry_id) VALUES (?, ?, ?, ?, ?, ?)";
+    private static final String INSERT_DEAD_LETTER =
+            "INSERT INTO win_record_dead_letter (lottery_event_id, uid, prize_name, remain_prize_amount, "
+                    + "created_time, journal_entry_id, error) VALUES (?, ?, ?, ?, ?, ?, ?)";
+    private static final String SELECT_WRITTEN_ENTRIES =
+            "SELECT journal_entry_id FROM win_record WHERE journal_entry_id IN (%s)";
+
+    // eventId -> prize name -> prize
+    private final Map<Long, Map<String, LotteryPrize>> prizeCache = new ConcurrentHashMap<>();
+
+    private BlockingQueue<PendingWin> queue;
+    private Thread writerThread;
+    private volatile boolean running;
+    private boolean journaling;
+    // Set once a batch is left unwritten, later checkpoints would delete it from the journal
+    private volatile boolean checkpointsHeld;
+    private List<PendingWin> recovered = List.of();
+
+    @PostConstruct
+    public void start() {
+        queue = new ArrayBlockingQueue<>(lotteryProperties.getWinWriter().getQueueCapacity());
+        eventConfigCache.addInvalidationListener(prizeCache::remove);
+
+        if (isEnabled()) {
+            if (localJournal.isEnabled()) {
+                // Replayed by the writer thread before anything new, so checkpoints stay in order
+                recovered = localJournal.open();
+                journaling = true;
+            }
+            running = true;
+            writerThread = new Thread(this::runWriter, "win-record-writer");
+            writerThread.setDaemon(true);
+            writerThread.start();
+        }
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if (writerThread == null) {
+            return;
+        }
+
+        running = false;
+        writerThread.interrupt();
+        writerThread.join(TimeUnit.SECONDS.toMillis(30));
+
+        // Whatever is left after the writer stopped
+        List<PendingWin> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        if (!remaining.isEmpty()) {
+            flush(remaining);
+        }
+    }
+
+    public boolean isEnabled() {
+        return lotteryProperties.getWinWriter().isEnabled();
+    }
+
+    /**
+     * Queue wins of one draw (single or batch) for the next group commit
+     *
+     * @param createdTime time of the draw, shared with the recent-wins cache
+     */
+    public void enqueue(Long eventId, Long userId, List<DrawResult> wins, LocalDateTime createdTime) {
+        for (DrawResult win : wins) {
+            if (journaling && !localJournal.fits(win.prize())) {
+                // Prize created before names were limited: stock is already taken, save it without the journal
+                log.warn("Prize name does not fit the win record journal, saving directly - eventId: {}, prize: {}",
+                        eventId, win.prize());
+                saveOverflow(eventId, userId, win.prize(), createdTime);
+                continue;
+            }
+
+            boolean queued;
+            if (journaling) {
+                // Append and offer together, so queue order is journal order and checkpoints never skip a win
+                synchronized (localJournal) {
+                    long sequence = localJournal.append(eventId, userId, win.prize(), win.stockLeft(), createdTime);
+                    queued = queue.offer(new PendingWin(eventId, userId, win.prize(), win.stockLeft(), createdTime,
+                            sequence, localJournal.entryId(sequence)));
+                }
+            } else {
+                queued = queue.offer(new PendingWin(
+                        eventId, userId, win.prize(), win.stockLeft(), createdTime, PendingWin.NOT_JOURNALED, null));
+            }
+
+            if (!queued) {
+                // Covered by later checkpoints, so overflow wins are not crash-safe
+                log.warn("Win record queue full, saving directly - eventId: {}, userId: {}, prize: {}",
+                        eventId, userId, win.prize());
+                saveOverflow(eventId, userId, win.prize(), createdTime);
+            }
+        }
+    }
+
+    /**
+     * Quota and stock are already taken: a win the async executor rejects is saved on the caller's thread
+     */
+    private void saveOverflow(Long eventId, Long userId, String prizeName, LocalDateTime createdTime) {
+        try {
+            winRecordService.saveWinRecordAsync(eventId, userId, prizeName, createdTime);
+        } catch (TaskRejectedException e) {
+            log.warn("Async win record save rejected, saving synchronously - eventId: {}, userId: {}, prize: {}",
+                    eventId, userId, prizeName);
+            try {
+                winRecordService.saveWinRecord(eventId, userId, prizeName, createdTime);
+            } catch (Exception saveError) {
+                log.error("Failed to save win record - eventId: {}, userId: {}, prize: {}",
+                        eventId, userId, prizeName, saveError);
+            }
+        }
+    }
+
+    private void runWriter() {
+        int batchSize = lotteryProperties.getWinWriter().getBatchSize();
+        long flushIntervalNanos = lotteryProperties.getWinWriter().getFlushInterval().toNanos();
+        List<PendingWin> batch = new ArrayList<>(batchSize);
+
+        for (int from = 0; from < recovered.size(); from += batchSize) {
+            flush(recovered.subList(from, Math.min(from + batchSize, recovered.size())));
+        }
+        if (!recovered.isEmpty()) {
+            log.info("Replayed win records from local journal - count: {}", recovered.size());
+            recovered = List.of();
+        }
+
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingWin first = queue.poll(flushIntervalNanos, TimeUnit.NANOSECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+
+                // Collect until the batch is full or the oldest record has waited flush-interval
+                long deadline = System.nanoTime() + flushIntervalNanos;
+                while (batch.size() < batchSize) {
+                    queue.drainTo(batch, batchSize - batch.size());
+                    long waitNanos = deadline - System.nanoTime();
+                    if (batch.size() >= batchSize || waitNanos <= 0) {
+                        break;
+                    }
+                    PendingWin next = queue.poll(waitNanos, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                // Shutdown: write what was collected, stop() drains the rest
+                Thread.currentThread().interrupt();
+                running = false;
+            }
+
+            if (!batch.isEmpty()) {
+                flush(batch);
+                batch.clear();
+            }
+            if (Thread.currentThread().isInterrupted()) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Write one group from the queue and checkpoint the journal
+     * A failing batch is retried with a growing delay, after MAX_WRITE_ATTEMPTS it is written row by row and
+     * rows that still fail are parked. Only when rows can be neither written nor parked (database down) does
+     * it keep retrying, later wins wait in the queue (and overflow to the direct save) meanwhile. A shutdown
+     * stops the retries, then the records stay in the journal for the next startup and nothing after them
+     * is checkpointed, including the batches stop() drains.
+     */
+    private void flush(List<PendingWin> batch) {
+        List<PendingWin> remaining = new ArrayList<>(batch);
+        for (int attempt = 1; ; attempt++) {
+            try {
+                if (attempt <= MAX_WRITE_ATTEMPTS) {
+                    writeBatch(remaining);
+                } else {
+                    writeEachOrPark(remaining);
+                }
+                checkpoint(batch);
+                return;
+            } catch (Exception e) {
+                if (attempt < MAX_WRITE_ATTEMPTS) {
+                    log.warn("Failed to write win records batch, retrying - attempt: {}", attempt, e);
+                } else if (attempt == MAX_WRITE_ATTEMPTS) {
+                    log.error("Failed to write win records batch, writing row by row - count: {}",
+                            remaining.size(), e);
+                } else {
+                    log.error("Failed to write or park win records, retrying - attempt: {}, count: {}, records: {}",
+                            attempt, remaining.size(), remaining, e);
+                }
+                if (!sleepBeforeRetry(attempt)) {
+                    // Shutting down: keep the batch in the journal
+                    checkpointsHeld = true;
+                    log.error("Win records batch not written on shutdown - count: {}, journaled: {}, records: {}",
+                            remaining.size(), journaling, remaining);
+                    return;
+                }
+            }
+        }
+    }
+
+    private void checkpoint(List<PendingWin> batch) {
+        if (journaling && !checkpointsHeld) {
+            localJournal.checkpoint(batch.get(batch.size() - 1).journalSequence());
+        }
+    }
+
+    /**
+     * @return false when the writer is shutting down: interrupted, or stop() draining after the row by row attempt
+     */
+    private boolean sleepBeforeRetry(int attempt) {
+        if (!running && attempt > MAX_WRITE_ATTEMPTS) {
+            return false;
+        }
+        try {
+            Thread.sleep(lotteryProperties.getWinWriter().getFlushInterval().toMillis()
+                    * Math.min(attempt, MAX_RETRY_BACKOFF));
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Insert one group of win records in a single JDBC batch, together with their hourly stats
+     * Also used by {@link WinJournalService}, which acknowledges stream entries only after this returns.
+     * Wins whose journal entry id is already in win_record were written by an earlier delivery and are skipped,
+     * the unique key on journal_entry_id rejects a concurrent second insert.
+     */
+    void writeBatch(List<PendingWin> batch) {
+        transactionTemplate.executeWithoutResult(status -> insertBatch(batch));
+    }
+
+    /**
+     * Write wins in a transaction each, parking a win that still fails in win_record_dead_letter
+     * Handled wins are removed from the list, so a retry continues with the rest. Throws when a win can be
+     * neither written nor parked, the database itself is failing then.
+     */
+    void writeEachOrPark(List<PendingWin> wins) {
+        Iterator<PendingWin> iterator = wins.iterator();
+        while (iterator.hasNext()) {
+            PendingWin win = iterator.next();
+            try {
+                writeBatch(List.of(win));
+            } catch (Exception e) {
+                park(win, e);
+            }
+            iterator.remove();
+        }
+    }
+
+    private void park(PendingWin win, Exception cause) {
+        String error = String.valueOf(cause.getMessage());
+        jdbcTemplate.update(INSERT_DEAD_LETTER,
+                win.eventId(),
+                win.userId(),
+                win.prizeName(),
+                win.stockLeft(),
+                Timestamp.valueOf(win.createdTime()),
+                win.journalEntryId(),
+                error.length() > MAX_ERROR_LENGTH ? error.substring(0, MAX_ERROR_LENGTH) : error);
+        log.error("Win record parked in dead letter table - eventId: {}, userId: {}, prize: {}",
+                win.eventId(), win.userId(), win.prizeName(), cause);
+    }
+
+    private void insertBatch(List<PendingWin> batch) {
+        long startedAt = System.currentTimeMillis();
+        List<WinRecord> records = new ArrayList<>(batch.size());
+        // Current stock read once per prize per batch, only for wins without a stock from the draw
+        Map<String, Integer> currentStock = new HashMap<>();
+        Set<String> writtenEntries = findWrittenEntries(batch);
+
+        for (PendingWin win : batch) {
+            if (win.journalEntryId() != null && writtenEntries.contains(win.journalEntryId())) {
+                log.info("Win record already written, skipped - journalEntryId: {}", win.journalEntryId());
+                continue;
+            }
+
+            LotteryPrize prize = getPrize(win.eventId(), win.prizeName());
+            if (prize == null) {
+                // Fails the batch, so the win ends up parked rather than lost
+                throw new IllegalArgumentException("Prize not found: " + win.prizeName());
+            }
+
+            Integer remain = win.stockLeft() != null
+                    ? win.stockLeft()
+                    : currentStock.computeIfAbsent(win.eventId() + ":" + win.prizeName(),
+                            key -> readStock(win.eventId(), prize));
+
+            records.add(WinRecord.builder()
+                    .lotteryEventId(win.eventId())
+                    .uid(win.userId())
+                    .drawPrizeId(prize.getId())
+                    .remainPrizeAmount(remain)
+                    .createdTime(win.createdTime())
+                    .journalEntryId(win.journalEntryId())
+                    .build());
+        }
+
+        List<Object[]> rows = records.stream()
+                .map(record -> new Object[]{
+                        record.getLotteryEventId(),
+                        record.getUid(),
+                        record.getDrawPrizeId(),
+                        record.getRemainPrizeAmount(),
+                        Timestamp.valueOf(record.getCreatedTime()),
+                        record.getJournalEntryId()
+                })
+                .toList();
+        jdbcTemplate.batchUpdate(INSERT_WIN_RECORD, rows);
+        // Only the rows inserted now are counted
+        winStatsService.addWins(records);
+        log.info("Win records written - count: {}, took: {} ms", rows.size(), System.currentTimeMillis() - startedAt);
+    }
+
+    private Set<String> findWrittenEntries(List<PendingWin> batch) {
+        List<String> entryIds = batch.stream()
+                .map(PendingWin::journalEntryId)
+                .filter(Objects::nonNull)
+                .toList();
+        if (entryIds.isEmpty()) {
+            return Set.of();
+        }
+
+        String placeholders = String.join(", ", Collections.nCopies(entryIds.size(), "?"));
+        return new HashSet<>(jdbcTemplate.queryForList(
+                String.format(SELECT_WRITTEN_ENTRIES, placeholders), String.class, entryIds.toArray()));
+    }
+
+    /**
+     * Prize of a win, the event's prizes are reloaded once when the cached ones do not have it
+     */
+    private LotteryPrize getPrize(Long eventId, String prizeName) {
+        LotteryPrize prize = loadPrizes(eventId).get(prizeName);
+        if (prize == null) {
+            // Prize added after the event's prizes were cached
+            prizeCache.remove(eventId);
+            prize = loadPrizes(eventId).get(prizeName);
+        }
+        return prize;
+    }
+
+    private Map<String, LotteryPrize> loadPrizes(Long eventId) {
+        return prizeCache.computeIfAbsent(eventId, id -> lotteryPrizeRepository.findByLotteryEventId(id)
+                .stream()
+                .collect(Collectors.toMap(LotteryPrize::getName, prize -> prize)));
+    }
+
+    private Integer readStock(Long eventId, LotteryPrize prize) {
+        String stockKey = String.format(PRIZE_STOCK_KEY, eventId, prize.getName());
+        Long redisStock = shardedCounter.getOrNull(stockKey);
+        return redisStock != null ? Math.toIntExact(redisStock) : prize.getAmount();
+    }
+
+    /**
+     * A win waiting to be written
+     *
+     * @param journalSequence sequence in the local journal, NOT_JOURNALED when not journaled
+     * @param journalEntryId eventId:streamEntryId of a Redis win journal entry, local:{node}:{sequence} of a local
+     *                       journal slot, null otherwise
+     */
+    record PendingWin(
+            Long eventId,
+            Long userId,
+            String prizeName,
+            Integer stockLeft,
+            LocalDateTime createdTime,
+            long journalSequence,
+            String journalEntryId
+    ) {
+        static final long NOT_JOURNALED = 0L;
+    }
+}
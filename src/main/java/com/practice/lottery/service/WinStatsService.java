@@ -0,0 +1,118 @@
+package com.practice.lottery.service;
+
+import com.practice.lottery.controller.response.WinStatsResponse;
+import com.practice.lottery.dao.entity.WinRecord;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Hourly win counts per event and prize in win_stats_hourly
+ * <p>
+ * Maintained incrementally by every path that inserts win records, in the same transaction as the insert,
+ * so reports read O(buckets) rows instead of scanning win_record. Archiving leaves the buckets in place.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class WinStatsService {
+    private final JdbcTemplate jdbcTemplate;
+    private final WinRecordArchiveService winRecordArchiveService;
+
+    private static final String UPSERT_WIN_STATS =
+            "INSERT INTO win_stats_hourly (lottery_event_id, draw_prize_id, bucket_start, win_count) VALUES (?, ?, ?, ?) "
+                    + "ON DUPLICATE KEY UPDATE win_count = win_count + VALUES(win_count)";
+
+    private static final String SELECT_WIN_STATS =
+            "SELECT s.draw_prize_id, p.name AS prize_name, s.bucket_start, s.win_count "
+                    + "FROM win_stats_hourly s "
+                    + "LEFT JOIN lottery_prize p ON p.id = s.draw_prize_id "
+                    + "WHERE s.lottery_event_id = ? AND s.bucket_start >= ? AND s.bucket_start < ? "
+                    + "ORDER BY s.bucket_start, s.draw_prize_id";
+
+    private static final String DELETE_EVENT_STATS =
+            "DELETE FROM win_stats_hourly WHERE lottery_event_id = ?";
+
+    private static final String COUNT_EVENT_STATS =
+            "SELECT COUNT(*) FROM win_stats_hourly WHERE lottery_event_id = ?";
+
+    private static final String REBUILD_EVENT_STATS =
+            "INSERT INTO win_stats_hourly (lottery_event_id, draw_prize_id, bucket_start, win_count) "
+                    + "SELECT lottery_event_id, draw_prize_id, DATE_FORMAT(created_time, '%Y-%m-%d %H:00:00'), COUNT(*) "
+                    + "FROM win_record WHERE lottery_event_id = ? AND id > ? "
+                    + "GROUP BY lottery_event_id, draw_prize_id, DATE_FORMAT(created_time, '%Y-%m-%d %H:00:00')";
+
+    /**
+     * Add freshly inserted win records to their hourly buckets with one batched upsert
+     * Call inside the transaction inserting the records.
+     */
+    public void addWins(List<WinRecord> records) {
+        // Rows sorted by key, so concurrent batches lock buckets in the same order
+        Map<String, Object[]> counts = new TreeMap<>();
+        for (WinRecord record : records) {
+            count(counts, record.getLotteryEventId(), record.getDrawPrizeId(), record.getCreatedTime());
+        }
+        upsert(counts);
+    }
+
+    private static void count(Map<String, Object[]> counts, Long eventId, Long prizeId, LocalDateTime createdTime) {
+        LocalDateTime bucketStart = createdTime.truncatedTo(ChronoUnit.HOURS);
+        String key = eventId + ":" + prizeId + ":" + bucketStart;
+        Object[] row = counts.computeIfAbsent(key, k -> new Object[]{
+                eventId, prizeId, Timestamp.valueOf(bucketStart), 0L});
+        row[3] = (Long) row[3] + 1;
+    }
+
+    private void upsert(Map<String, Object[]> counts) {
+        if (!counts.isEmpty()) {
+            jdbcTemplate.batchUpdate(UPSERT_WIN_STATS, new ArrayList<>(counts.values()));
+        }
+    }
+
+    /**
+     * Hourly win counts of an event in [from, to)
+     */
+    @Transactional(readOnly = true)
+    public List<WinStatsResponse> getHourlyWinStats(Long eventId, LocalDateTime from, LocalDateTime to) {
+        return jdbcTemplate.query(SELECT_WIN_STATS,
+                (rs, rowNum) -> WinStatsResponse.builder()
+                        .prizeId(rs.getLong("draw_prize_id"))
+                        .prizeName(rs.getString("prize_name") != null ? rs.getString("prize_name") : "Unknown Prize")
+                        .bucketStart(rs.getTimestamp("bucket_start").toLocalDateTime())
+                        .winCount(rs.getLong("win_count"))
+                        .build(),
+                eventId, Timestamp.valueOf(from), Timestamp.valueOf(to));
+    }
+
+    /**
+     * Recount an event's buckets from win_record and the archive, for records written before the rollup existed
+     * Scans the event's win records once; briefly blocks concurrent inserts of the event.
+     * Archived records are counted from the archive files, rows up to the archived id only there.
+     */
+    @Transactional
+    public int rebuildWinStats(Long eventId) {
+        long archivedMaxId = winRecordArchiveService.archivedMaxId(eventId);
+        jdbcTemplate.update(DELETE_EVENT_STATS, eventId);
+        jdbcTemplate.update(REBUILD_EVENT_STATS, eventId, archivedMaxId);
+
+        Map<String, Object[]> archived = new TreeMap<>();
+        winRecordArchiveService.forEachArchivedRecord(eventId, archivedMaxId,
+                record -> count(archived, eventId, record.getDrawPrizeId(), record.getCreatedTime()));
+        upsert(archived);
+
+        int buckets = jdbcTemplate.queryForObject(COUNT_EVENT_STATS, Integer.class, eventId);
+        log.info("Win stats rebuilt - eventId: {}, buckets: {}, archived buckets: {}",
+                eventId, buckets, archived.size());
+        return buckets;
+    }
+}
@@ -0,0 +1,143 @@
+-- Atomic lottery draw (single or batch) in a single round trip
+-- Every key is declared in KEYS and carries the {eventId} hash tag, so all of them live in one cluster slot
+-- KEYS[1] event active flag, KEYS[2] event remain amount, KEYS[3] user chance,
+-- KEYS[4] pointer to the current prize rate hash version (PrizeRateStore),
+-- KEYS[5] rate version the caller's prize list was read from, KEYS[6] win journal stream (WinJournalService),
+-- KEYS[7..] stock key of each prize in ARGV[6..]
+-- ARGV[1] random seed in [0, 2147483646), see DrawRandomSource
+-- ARGV[2] number of draws, quota for all of them is reserved up front (all or nothing)
+-- ARGV[3] '1' when the event quota was already taken from a node lease (EventQuotaLeaseManager)
+-- ARGV[4] '1' to append wins to the journal stream, the caller registers the stream beforehand
+-- ARGV[5] user id, ARGV[6] draw time in epoch millis (whole seconds), both only used when journaling
+-- ARGV[7..] prize names of the caller's rate version, in the order of their stock keys
+-- Counters are single keys here, sharded counters are only used by the per-step draw (ShardedCounter)
+-- Returns {status} on rejection / missing cache, 'RATES_CHANGED' when KEYS[5] is no longer current,
+-- or {'OK', prize1, stockLeft1, prize2, stockLeft2, ...} on success, stockLeft is '' for Miss
+
+local active = redis.call('GET', KEYS[1])
+if not active then
+    return {'NO_ACTIVE_KEY'}
+end
+if active ~= 'true' then
+    return {'INACTIVE'}
+end
+
+local FIRST_STOCK_KEY = 7
+local FIRST_PRIZE_ARG = 7
+
+local leased = ARGV[3] == '1'
+local eventRemain = nil
+if not leased then
+    eventRemain = redis.call('GET', KEYS[2])
+    if not eventRemain then
+        return {'NO_EVENT_KEY'}
+    end
+    eventRemain = tonumber(eventRemain)
+end
+
+local userChance = redis.call('GET', KEYS[3])
+if not userChance then
+    return {'NO_USER_KEY'}
+end
+
+-- Pointer checked in the same script: a concurrent refresh is either fully visible or not at all.
+-- The hash is only read under the caller's version key, whose prize stock keys were passed in KEYS.
+local rateKey = redis.call('GET', KEYS[4])
+if not rateKey then
+    return {'NO_RATES'}
+end
+if rateKey ~= KEYS[5] then
+    return {'RATES_CHANGED'}
+end
+local rates = redis.call('HGETALL', KEYS[5])
+if #rates == 0 then
+    return {'NO_RATES'}
+end
+local stockKeyOf = {}
+for i = FIRST_PRIZE_ARG, #ARGV do
+    stockKeyOf[ARGV[i]] = KEYS[FIRST_STOCK_KEY + i - FIRST_PRIZE_ARG]
+end
+for i = 1, #rates, 2 do
+    if not stockKeyOf[rates[i]] then
+        return {'RATES_CHANGED'}
+    end
+end
+
+-- Check both quotas before touching anything, so no rollback is needed
+local times = tonumber(ARGV[2])
+if not leased and eventRemain < times then
+    return {'EVENT_EMPTY'}
+end
+if tonumber(userChance) < times then
+    return {'USER_EMPTY'}
+end
+
+local seed = tonumber(ARGV[1])
+if not leased then
+    redis.call('DECRBY', KEYS[2], times)
+end
+local userAfter = redis.call('DECRBY', KEYS[3], times)
+
+-- Snapshot prize weights (basis points) and stock, stock is written back once per prize
+local names, weights, stockKeys, stocks, won = {}, {}, {}, {}, {}
+for i = 1, #rates, 2 do
+    local n = #names + 1
+    names[n] = rates[i]
+    weights[n] = math.floor(tonumber(rates[i + 1]) * 10000 + 0.5)
+    stockKeys[n] = stockKeyOf[rates[i]]
+    stocks[n] = tonumber(redis.call('GET', stockKeys[n]) or '0')
+    won[n] = 0
+end
+
+local result = {'OK'}
+for d = 1, times do
+    -- Draw sequence = user chance left after this draw, same as consecutive single draws.
+    -- Random value in [0, 10000): three Park-Miller steps, products stay below 2^53 so doubles are exact
+    local sequence = userAfter + times - d
+    local state = (seed + sequence) % 2147483646 + 1
+    for _ = 1, 3 do
+        state = (state * 16807) % 2147483647
+    end
+    local random = state % 10000
+
+    -- Cumulative selection over in-stock prizes
+    local selected = nil
+    local cumulative = 0
+    for n = 1, #names do
+        if stocks[n] > 0 then
+            cumulative = cumulative + weights[n]
+            if random < cumulative then
+                selected = n
+                break
+            end
+        end
+    end
+
+    if selected then
+        stocks[selected] = stocks[selected] - 1
+        won[selected] = won[selected] + 1
+        result[#result + 1] = names[selected]
+        result[#result + 1] = tostring(stocks[selected])
+    else
+        result[#result + 1] = 'Miss'
+        result[#result + 1] = ''
+    end
+end
+
+for n = 1, #names do
+    if won[n] > 0 then
+        redis.call('DECRBY', stockKeys[n], won[n])
+    end
+end
+
+-- Journal wins in the same atomic step as the stock decrement
+if ARGV[4] == '1' then
+    for i = 2, #result, 2 do
+        if result[i] ~= 'Miss' then
+            redis.call('XADD', KEYS[6], '*', 'uid', ARGV[5], 'prize', result[i], 'stockLeft', result[i + 1],
+                'wonAt', ARGV[6])
+        end
+    end
+end
+
+return result
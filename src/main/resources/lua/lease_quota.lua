@@ -0,0 +1,27 @@
+-- Lease a block of event quota to one app node
+-- KEYS[1] event remain amount, KEYS[2] outstanding lease hash (node id -> units held),
+-- KEYS[3] lease epoch, bumped by every admin reset of the remain amount
+-- ARGV[1] node id, ARGV[2] units the node still holds locally, ARGV[3] block size,
+-- ARGV[4] epoch the locally held units were leased under
+-- Returns {granted, epoch}: granted is 0 when the event is sold out; {-1} when the remain key is not initialized
+-- Units held under an older epoch were voided by a reset, they are not registered again
+
+local remain = redis.call('GET', KEYS[1])
+if not remain then
+    return {-1}
+end
+
+local epoch = tonumber(redis.call('GET', KEYS[3]) or '0')
+local held = tonumber(ARGV[2])
+if tonumber(ARGV[4]) ~= epoch then
+    held = 0
+end
+
+local granted = math.min(tonumber(remain), tonumber(ARGV[3]))
+if granted <= 0 then
+    return {0, epoch}
+end
+
+redis.call('DECRBY', KEYS[1], granted)
+redis.call('HSET', KEYS[2], ARGV[1], held + granted)
+return {granted, epoch}
@@ -0,0 +1,14 @@
+-- Give units taken from an already returned lease back (draw rolled back after the lease expired)
+-- KEYS[1] event remain amount, KEYS[2] lease epoch
+-- ARGV[1] epoch the units were leased under, ARGV[2] units
+-- Units leased before an admin reset of the remain amount are void and are not added to the new value
+-- Returns 1 when the units were restored, 0 when they were dropped
+
+if tonumber(redis.call('GET', KEYS[2]) or '0') ~= tonumber(ARGV[1]) then
+    return 0
+end
+if redis.call('EXISTS', KEYS[1]) == 0 then
+    return 0
+end
+redis.call('INCRBY', KEYS[1], ARGV[2])
+return 1
@@ -0,0 +1,13 @@
+-- Give unused leased event quota back
+-- KEYS[1] event remain amount, KEYS[2] outstanding lease hash (node id -> units held)
+-- ARGV[1] node id, ARGV[2] unused units
+-- Units are only returned while the node's lease is still registered: an admin reset of the
+-- remain amount drops the lease hash, and returning units on top of the new value would oversell.
+
+if redis.call('HDEL', KEYS[2], ARGV[1]) == 0 then
+    return 0
+end
+if tonumber(ARGV[2]) > 0 and redis.call('EXISTS', KEYS[1]) == 1 then
+    redis.call('INCRBY', KEYS[1], ARGV[2])
+end
+return 1
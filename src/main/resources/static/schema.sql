@@ -21,7 +21,9 @@ CREATE TABLE `lottery_prize` (
   `amount` int DEFAULT NULL,
   `created_time` timestamp NULL DEFAULT CURRENT_TIMESTAMP,
   `updated_time` timestamp NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
-  PRIMARY KEY (`id`)
+  PRIMARY KEY (`id`),
+  -- Names are copied into fixed 128-byte win record journal slots (LotteryPrize.MAX_NAME_BYTES)
+  CONSTRAINT `chk_lottery_prize_name_bytes` CHECK (LENGTH(`name`) <= 97)
 ) ENGINE=InnoDB AUTO_INCREMENT=4 DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_0900_ai_ci;
 
 
@@ -63,5 +65,67 @@ CREATE TABLE `win_record` (
   `remain_prize_amount` int DEFAULT NULL,
   `created_time` timestamp NULL DEFAULT CURRENT_TIMESTAMP,
   `updated_time` timestamp NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
-  PRIMARY KEY (`id`)
-) ENGINE=InnoDB AUTO_INCREMENT=2 DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_0900_ai_ci;
\ No newline at end of file
+  `journal_entry_id` varchar(64) DEFAULT NULL,
+  PRIMARY KEY (`id`),
+  KEY `idx_win_record_uid_created` (`uid`, `created_time`, `id`),
+  KEY `idx_win_record_event` (`lottery_event_id`, `id`),
+  KEY `idx_win_record_event_uid` (`lottery_event_id`, `uid`)
+) ENGINE=InnoDB AUTO_INCREMENT=2 DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_0900_ai_ci;
+
+-- win_record partitioned by month of created_time
+-- The partition column must be in every unique key, so the primary key becomes (id, created_time).
+-- Monthly partitions are split off p_future by WinRecordPartitionMaintainer.
+
+ALTER TABLE `win_record`
+  MODIFY `created_time` timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP,
+  DROP PRIMARY KEY,
+  ADD PRIMARY KEY (`id`, `created_time`),
+  -- A redelivered win journal entry is not inserted twice (WinJournalService)
+  ADD UNIQUE KEY `uk_win_record_journal_entry` (`journal_entry_id`, `created_time`)
+  PARTITION BY RANGE (UNIX_TIMESTAMP(`created_time`)) (
+    PARTITION p_future VALUES LESS THAN MAXVALUE
+  );
+
+
+-- mydockerdb.win_record_dead_letter definition
+-- Wins WinRecordWriter could not write even row by row, kept for an operator to fix and replay
+
+CREATE TABLE `win_record_dead_letter` (
+  `id` bigint NOT NULL AUTO_INCREMENT,
+  `lottery_event_id` bigint NOT NULL,
+  `uid` bigint NOT NULL,
+  `prize_name` varchar(255) NOT NULL,
+  `remain_prize_amount` int DEFAULT NULL,
+  `created_time` timestamp NOT NULL,
+  `journal_entry_id` varchar(64) DEFAULT NULL,
+  `error` varchar(512) DEFAULT NULL,
+  `parked_time` timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP,
+  PRIMARY KEY (`id`),
+  KEY `idx_win_record_dead_letter_event` (`lottery_event_id`, `id`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_0900_ai_ci;
+
+
+-- mydockerdb.win_stats_hourly definition
+-- Wins per event, prize and hour, upserted together with every win_record insert
+
+CREATE TABLE `win_stats_hourly` (
+  `lottery_event_id` bigint NOT NULL,
+  `draw_prize_id` bigint NOT NULL,
+  `bucket_start` datetime NOT NULL,
+  `win_count` bigint NOT NULL DEFAULT '0',
+  PRIMARY KEY (`lottery_event_id`, `bucket_start`, `draw_prize_id`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_0900_ai_ci;
+
+
+-- mydockerdb.config_outbox definition
+-- Admin changes still to be applied to Redis, inserted in the same transaction as the change
+
+CREATE TABLE `config_outbox` (
+  `id` bigint NOT NULL AUTO_INCREMENT,
+  `lottery_event_id` bigint NOT NULL,
+  `change_type` varchar(32) NOT NULL,
+  `created_time` timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP,
+  `processed_time` timestamp NULL DEFAULT NULL,
+  PRIMARY KEY (`id`),
+  KEY `idx_config_outbox_processed` (`processed_time`, `id`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_0900_ai_ci;
\ No newline at end of file
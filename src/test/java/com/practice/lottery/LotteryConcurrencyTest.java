@@ -66,7 +66,7 @@ public class LotteryConcurrencyTest {
     private static final Long TEST_USER_ID = 2L;
     private Long TEST_EVENT_ID = 999l;
     private String userToken;
-    private  String USER_CHANCE_KEY = "lottery:%d:user:%d:chance";
+    private  String USER_CHANCE_KEY = "lottery:{%d}:user:%d:chance";
     private String adminToken;
 
     @BeforeEach
@@ -536,7 +536,7 @@ public class LotteryConcurrencyTest {
     private void cleanupTestData() {
         try {
             // Clear Redis cache first
-            redissonClient.getKeys().deleteByPattern("lottery:" + TEST_EVENT_ID + ":*");
+            redissonClient.getKeys().deleteByPattern("lottery:{" + TEST_EVENT_ID + "}:*");
 
             // Delete test data in correct order (avoid foreign key issues)
             // 1. Delete win records
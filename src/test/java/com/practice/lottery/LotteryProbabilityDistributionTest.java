@@ -560,7 +560,7 @@ public class LotteryProbabilityDistributionTest {
      */
     private void cleanupTestData() {
         try {
-            redissonClient.getKeys().deleteByPattern("lottery:" + TEST_EVENT_ID + ":*");
+            redissonClient.getKeys().deleteByPattern("lottery:{" + TEST_EVENT_ID + "}:*");
 
             userLotteryQuotaRepository.findAll().stream()
                     .filter(q -> q.getLotteryEventId().equals(TEST_EVENT_ID))
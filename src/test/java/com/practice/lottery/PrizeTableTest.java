@@ -0,0 +1,75 @@
+package com.practice.lottery;
+
+import com.practice.lottery.service.EventConfig;
+import com.practice.lottery.service.PrizeTable;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+/**
+ * 別名表 (alias table) 抽樣測試
+ * 以均勻分布的隨機值掃描 [0, 1)，驗證每個獎品命中比例與設定機率一致
+ */
+public class PrizeTableTest {
+
+    private static final int GRID_SIZE = 1_000_000;
+
+    private final PrizeTable prizeTable = PrizeTable.compile(List.of(
+            new EventConfig.Prize("FirstPrize", new BigDecimal("0.10")),
+            new EventConfig.Prize("SecondPrize", new BigDecimal("0.20")),
+            new EventConfig.Prize("ThirdPrize", new BigDecimal("0.30"))
+    ));
+
+    @Test
+    public void testAllPrizesAvailable() {
+        Map<Integer, Double> rates = sweep(prizeTable, prizeTable.allAvailableMask());
+
+        assertThat(rates.get(0)).isCloseTo(0.10, within(0.0001));
+        assertThat(rates.get(1)).isCloseTo(0.20, within(0.0001));
+        assertThat(rates.get(2)).isCloseTo(0.30, within(0.0001));
+        assertThat(rates.get(PrizeTable.MISS)).isCloseTo(0.40, within(0.0001));
+    }
+
+    @Test
+    public void testSoldOutPrizeFallsIntoMiss() {
+        // SecondPrize sold out
+        long availableMask = prizeTable.allAvailableMask() & ~(1L << 1);
+        Map<Integer, Double> rates = sweep(prizeTable, availableMask);
+
+        assertThat(rates).doesNotContainKey(1);
+        assertThat(rates.get(0)).isCloseTo(0.10, within(0.0001));
+        assertThat(rates.get(2)).isCloseTo(0.30, within(0.0001));
+        assertThat(rates.get(PrizeTable.MISS)).isCloseTo(0.60, within(0.0001));
+    }
+
+    @Test
+    public void testFullRateNeverMisses() {
+        PrizeTable fullTable = PrizeTable.compile(List.of(
+                new EventConfig.Prize("Small", new BigDecimal("0.75")),
+                new EventConfig.Prize("Big", new BigDecimal("0.25"))
+        ));
+        Map<Integer, Double> rates = sweep(fullTable, fullTable.allAvailableMask());
+
+        assertThat(rates).doesNotContainKey(PrizeTable.MISS);
+        assertThat(rates.get(0)).isCloseTo(0.75, within(0.0001));
+        assertThat(rates.get(1)).isCloseTo(0.25, within(0.0001));
+    }
+
+    private Map<Integer, Double> sweep(PrizeTable table, long availableMask) {
+        Map<Integer, Integer> counts = new HashMap<>();
+        for (int i = 0; i < GRID_SIZE; i++) {
+            double random = (i + 0.5) / GRID_SIZE;
+            counts.merge(table.sample(availableMask, random), 1, Integer::sum);
+        }
+
+        Map<Integer, Double> rates = new HashMap<>();
+        counts.forEach((outcome, count) -> rates.put(outcome, (double) count / GRID_SIZE));
+        return rates;
+    }
+}
@@ -0,0 +1,121 @@
+package com.practice.lottery.service;
+
+import com.practice.lottery.dao.entity.LotteryEvent;
+import com.practice.lottery.dao.entity.LotteryPrize;
+import com.practice.lottery.dao.repository.LotteryEventRepository;
+import com.practice.lottery.dao.repository.LotteryPrizeRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.redisson.api.RedissonClient;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * A config_outbox row applied twice (relay died before marking it processed) leaves Redis as applying it once
+ */
+@SpringBootTest
+public class ConfigOutboxRelayTest {
+
+    @Autowired
+    private ConfigOutbox configOutbox;
+
+    @Autowired
+    private ConfigOutboxRelay configOutboxRelay;
+
+    @Autowired
+    private PrizeRateStore prizeRateStore;
+
+    @Autowired
+    private LotteryEventRepository lotteryEventRepository;
+
+    @Autowired
+    private LotteryPrizeRepository lotteryPrizeRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private RedissonClient redissonClient;
+
+    private static final long RELAY_TIMEOUT_MILLIS = 10_000;
+
+    private Long eventId;
+    private LotteryPrize prize;
+
+    @BeforeEach
+    public void setup() {
+        LotteryEvent event = new LotteryEvent();
+        event.setName("Config Outbox Test Event");
+        event.setIsActive(true);
+        event.setSettingAmount(100);
+        event.setRemainAmount(100);
+        eventId = lotteryEventRepository.saveAndFlush(event).getId();
+
+        prize = new LotteryPrize();
+        prize.setLotteryEventId(eventId);
+        prize.setName("outbox_prize");
+        prize.setRate(new BigDecimal("0.10"));
+        prize.setAmount(10);
+        prize = lotteryPrizeRepository.saveAndFlush(prize);
+    }
+
+    @AfterEach
+    public void cleanup() {
+        jdbcTemplate.update("DELETE FROM config_outbox WHERE lottery_event_id = ?", eventId);
+        redissonClient.getKeys().deleteByPattern("lottery:{" + eventId + "}:*");
+        lotteryPrizeRepository.deleteById(prize.getId());
+        lotteryEventRepository.deleteById(eventId);
+    }
+
+    @Test
+    public void testRelay_ReappliedRowsKeepTheSameRates() throws InterruptedException {
+        // Two edits in one transaction: two rows, coalesced into one publish
+        transactionTemplate.executeWithoutResult(status -> {
+            prize.setRate(new BigDecimal("0.30"));
+            lotteryPrizeRepository.save(prize);
+            configOutbox.append(eventId, ConfigOutbox.ChangeType.PRIZE_RATES);
+            configOutbox.append(eventId, ConfigOutbox.ChangeType.PRIZE_RATES);
+        });
+        awaitAllProcessed();
+
+        Map<String, String> applied = prizeRateStore.read(eventId).rates();
+        assertThat(applied).containsExactly(Map.entry("outbox_prize", "0.30"));
+
+        // Relay stopped after applying but before marking: the rows come again
+        jdbcTemplate.update("UPDATE config_outbox SET processed_time = NULL WHERE lottery_event_id = ?", eventId);
+        awaitAllProcessed();
+
+        assertThat(prizeRateStore.read(eventId).rates()).isEqualTo(applied);
+    }
+
+    /**
+     * Relay until no row of the event is pending; a relay already running elsewhere holds the lock meanwhile
+     */
+    private void awaitAllProcessed() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + RELAY_TIMEOUT_MILLIS;
+        while (pendingRows() > 0) {
+            assertThat(System.currentTimeMillis()).as("outbox rows relayed in time").isLessThan(deadline);
+            configOutboxRelay.relay();
+            Thread.sleep(50);
+        }
+        assertThat(jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM config_outbox WHERE lottery_event_id = ?", Long.class, eventId)).isEqualTo(2L);
+    }
+
+    private long pendingRows() {
+        return jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM config_outbox WHERE lottery_event_id = ? AND processed_time IS NULL",
+                Long.class, eventId);
+    }
+}
@@ -0,0 +1,120 @@
+package com.practice.lottery.service;
+
+import com.practice.lottery.dao.entity.LotteryEvent;
+import com.practice.lottery.dao.entity.LotteryPrize;
+import com.practice.lottery.dao.entity.UserLotteryQuota;
+import com.practice.lottery.dao.repository.LotteryEventRepository;
+import com.practice.lottery.dao.repository.LotteryPrizeRepository;
+import com.practice.lottery.dao.repository.UserLotteryQuotaRepository;
+import com.practice.lottery.exception.LotteryException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.redisson.api.RedissonClient;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * drawBatch reserves the quota of all its draws up front: a batch is drawn completely or not at all
+ */
+@SpringBootTest
+public class LotteryBatchDrawTest {
+
+    @Autowired
+    private LotteryService lotteryService;
+
+    @Autowired
+    private LotteryEventRepository lotteryEventRepository;
+
+    @Autowired
+    private LotteryPrizeRepository lotteryPrizeRepository;
+
+    @Autowired
+    private UserLotteryQuotaRepository userLotteryQuotaRepository;
+
+    @Autowired
+    private ShardedCounter shardedCounter;
+
+    @Autowired
+    private RedissonClient redissonClient;
+
+    private static final Long TEST_USER_ID = 990_101L;
+    private static final String PRIZE_NAME = "batch_prize";
+
+    private Long eventId;
+
+    @BeforeEach
+    public void setup() {
+        LotteryEvent event = new LotteryEvent();
+        event.setName("Batch Draw Test Event");
+        event.setIsActive(true);
+        event.setSettingAmount(100);
+        event.setRemainAmount(100);
+        eventId = lotteryEventRepository.saveAndFlush(event).getId();
+
+        // Every draw wins, so each draw of a batch takes one unit of stock
+        LotteryPrize prize = new LotteryPrize();
+        prize.setLotteryEventId(eventId);
+        prize.setName(PRIZE_NAME);
+        prize.setRate(new BigDecimal("1.00"));
+        prize.setAmount(10);
+        lotteryPrizeRepository.saveAndFlush(prize);
+
+        UserLotteryQuota quota = new UserLotteryQuota();
+        quota.setUid(TEST_USER_ID.intValue());
+        quota.setLotteryEventId(eventId);
+        quota.setDrawQuota(3);
+        userLotteryQuotaRepository.saveAndFlush(quota);
+
+        lotteryService.initPrizeStock(eventId);
+    }
+
+    @AfterEach
+    public void cleanup() {
+        redissonClient.getKeys().deleteByPattern("lottery:{" + eventId + "}:*");
+        userLotteryQuotaRepository.findByUidAndLotteryEventId(TEST_USER_ID, eventId)
+                .ifPresent(quota -> userLotteryQuotaRepository.deleteById(quota.getId()));
+        lotteryPrizeRepository.findByLotteryEventId(eventId)
+                .forEach(prize -> lotteryPrizeRepository.deleteById(prize.getId()));
+        lotteryEventRepository.deleteById(eventId);
+    }
+
+    @Test
+    public void testDrawBatch_MoreThanUserChanceTakesNothing() {
+        assertThatThrownBy(() -> lotteryService.drawBatch(eventId, TEST_USER_ID, 5, false))
+                .isInstanceOf(LotteryException.class)
+                .hasMessage("User has insufficient remaining draws");
+
+        assertThat(userChance()).isEqualTo(3L);
+        assertThat(eventRemain()).isEqualTo(100L);
+        assertThat(prizeStock()).isEqualTo(10L);
+    }
+
+    @Test
+    public void testDrawBatch_WithinUserChanceTakesAll() {
+        List<String> results = lotteryService.drawBatch(eventId, TEST_USER_ID, 3, false);
+
+        assertThat(results).containsExactly(PRIZE_NAME, PRIZE_NAME, PRIZE_NAME);
+        assertThat(userChance()).isEqualTo(0L);
+        assertThat(eventRemain()).isEqualTo(97L);
+        assertThat(prizeStock()).isEqualTo(7L);
+    }
+
+    private long userChance() {
+        return redissonClient.getAtomicLong(String.format("lottery:{%d}:user:%d:chance", eventId, TEST_USER_ID)).get();
+    }
+
+    private Long eventRemain() {
+        return shardedCounter.getOrNull(String.format("lottery:{%d}:remainAmount", eventId));
+    }
+
+    private Long prizeStock() {
+        return shardedCounter.getOrNull(String.format("lottery:{%d}:prize:%s:stock", eventId, PRIZE_NAME));
+    }
+}
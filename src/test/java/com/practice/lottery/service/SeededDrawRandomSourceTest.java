@@ -0,0 +1,69 @@
+package com.practice.lottery.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Pins the exact draw values of a seed, so a change to the derivation shows up as a failed replay
+ */
+public class SeededDrawRandomSourceTest {
+
+    private static final long SEED = 20240101L;
+    private static final long EVENT_ID = 1L;
+    private static final long USER_ID = 42L;
+
+    private final SeededDrawRandomSource randomSource = new SeededDrawRandomSource(SEED);
+
+    @Test
+    public void testForDraw_ExactSequence() {
+        // A user with 10 chances draws with sequence 9 down to 5
+        List<Double> values = LongStream.of(9, 8, 7, 6, 5)
+                .mapToObj(sequence -> randomSource.forDraw(EVENT_ID, USER_ID, sequence).nextDouble())
+                .toList();
+
+        assertThat(values).containsExactly(
+                0.5054805238131292,
+                0.18681562614473435,
+                0.7235102747734405,
+                0.057833001054821365,
+                0.723371568217327
+        );
+    }
+
+    @Test
+    public void testForDraw_SameIdentitySameValue() {
+        SeededDrawRandomSource replay = new SeededDrawRandomSource(SEED);
+
+        assertThat(replay.forDraw(EVENT_ID, USER_ID, 7).nextDouble())
+                .isEqualTo(randomSource.forDraw(EVENT_ID, USER_ID, 7).nextDouble());
+        assertThat(randomSource.forDraw(EVENT_ID, USER_ID + 1, 9).nextDouble())
+                .isEqualTo(0.7818283922789059);
+    }
+
+    @Test
+    public void testScriptSeed_ExactDrawSequence() {
+        long scriptSeed = randomSource.scriptSeed(EVENT_ID, USER_ID);
+        assertThat(scriptSeed).isEqualTo(61032239L);
+
+        List<Long> values = LongStream.of(9, 8, 7, 6, 5)
+                .mapToObj(sequence -> scriptRandom(scriptSeed, sequence))
+                .toList();
+
+        assertThat(values).containsExactly(7253L, 827L, 4401L, 7975L, 7902L);
+    }
+
+    /**
+     * Random value in [0, 10000) draw.lua derives from the seed and sequence
+     */
+    private static long scriptRandom(long scriptSeed, long sequence) {
+        long state = (scriptSeed + sequence) % SeededDrawRandomSource.SCRIPT_SEED_BOUND + 1;
+        for (int i = 0; i < 3; i++) {
+            state = (state * 16807) % 2147483647;
+        }
+        return state % 10000;
+    }
+}
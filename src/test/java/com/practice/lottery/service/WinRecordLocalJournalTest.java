@@ -0,0 +1,123 @@
+package com.practice.lottery.service;
+
+import com.practice.lottery.config.LotteryProperties;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Replay and checkpoint of the local win record journal, reopened as after a node restart
+ */
+public class WinRecordLocalJournalTest {
+
+    @TempDir
+    private Path directory;
+
+    private LotteryProperties lotteryProperties;
+    private WinRecordLocalJournal journal;
+
+    private final LocalDateTime wonAt = LocalDateTime.of(2024, 1, 1, 10, 0, 0);
+
+    @BeforeEach
+    public void setup() {
+        lotteryProperties = new LotteryProperties();
+        lotteryProperties.getWinWriter().getJournal().setDirectory(directory.toString());
+        // Two slots per segment, so checkpoints delete whole segments
+        lotteryProperties.getWinWriter().getJournal().setSegmentRecords(2);
+        journal = reopen();
+    }
+
+    @AfterEach
+    public void cleanup() {
+        journal.close();
+    }
+
+    @Test
+    public void testOpen_ReplaysWinsAfterCheckpoint() {
+        assertThat(journal.open()).isEmpty();
+        for (long userId = 1; userId <= 5; userId++) {
+            journal.append(7L, userId, "journal_prize", userId == 5 ? null : (int) (10 - userId),
+                    wonAt.plusSeconds(userId));
+        }
+        journal.checkpoint(3);
+        journal.close();
+
+        journal = reopen();
+        List<WinRecordWriter.PendingWin> pending = journal.open();
+
+        assertThat(pending).extracting(WinRecordWriter.PendingWin::userId).containsExactly(4L, 5L);
+        assertThat(pending).extracting(WinRecordWriter.PendingWin::journalSequence).containsExactly(4L, 5L);
+        WinRecordWriter.PendingWin first = pending.get(0);
+        assertThat(first.eventId()).isEqualTo(7L);
+        assertThat(first.prizeName()).isEqualTo("journal_prize");
+        assertThat(first.stockLeft()).isEqualTo(6);
+        assertThat(first.createdTime()).isEqualTo(wonAt.plusSeconds(4));
+        assertThat(pending.get(1).stockLeft()).isNull();
+
+        // New wins continue after the replayed ones
+        assertThat(journal.append(7L, 6L, "journal_prize", 3, wonAt)).isEqualTo(6L);
+    }
+
+    @Test
+    public void testOpen_ReplayAfterCommitBeforeCheckpointKeepsEntryIds() {
+        journal.open();
+        long first = journal.append(7L, 1L, "journal_prize", 9, wonAt);
+        long second = journal.append(7L, 2L, "journal_prize", 8, wonAt);
+        // The ids the writer queued and committed the batch with
+        List<String> committed = List.of(journal.entryId(first), journal.entryId(second));
+        journal.close();
+
+        // Crash before the checkpoint: the committed batch comes back with the same ids, so it is skipped
+        journal = reopen();
+        List<WinRecordWriter.PendingWin> pending = journal.open();
+
+        assertThat(pending).extracting(WinRecordWriter.PendingWin::journalEntryId).isEqualTo(committed);
+        assertThat(committed).doesNotHaveDuplicates().allMatch(id -> id.startsWith("local:") && id.length() <= 64);
+    }
+
+    @Test
+    public void testCheckpoint_DeletesCoveredSegmentsAndNeverMovesBack() throws IOException {
+        journal.open();
+        for (long userId = 1; userId <= 5; userId++) {
+            journal.append(7L, userId, "journal_prize", 1, wonAt);
+        }
+
+        journal.checkpoint(3);
+        journal.checkpoint(2);
+        journal.close();
+
+        // Sequences 1, 2-3 and 4-5 are in segments 0, 1 and 2
+        assertThat(segmentFiles()).containsExactly("segment-000000000002.dat");
+        journal = reopen();
+        assertThat(journal.open()).extracting(WinRecordWriter.PendingWin::journalSequence).containsExactly(4L, 5L);
+    }
+
+    @Test
+    public void testFits_PrizeNameLimitedToOneSlot() {
+        assertThat(journal.fits("a".repeat(97))).isTrue();
+        assertThat(journal.fits("a".repeat(98))).isFalse();
+    }
+
+    private WinRecordLocalJournal reopen() {
+        return new WinRecordLocalJournal(lotteryProperties);
+    }
+
+    private List<String> segmentFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(path -> path.getFileName().toString())
+                    .filter(name -> name.startsWith("segment-"))
+                    .sorted()
+                    .toList();
+        }
+    }
+}
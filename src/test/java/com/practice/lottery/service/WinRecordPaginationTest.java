@@ -0,0 +1,149 @@
+package com.practice.lottery.service;
+
+import com.practice.lottery.controller.response.WinRecordPageResponse;
+import com.practice.lottery.controller.response.WinRecordResponse;
+import com.practice.lottery.dao.entity.LotteryEvent;
+import com.practice.lottery.dao.entity.LotteryPrize;
+import com.practice.lottery.dao.repository.LotteryEventRepository;
+import com.practice.lottery.dao.repository.LotteryPrizeRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.redisson.api.RedissonClient;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Keyset pagination of a user's win records: every record exactly once, newest first, ties broken by id
+ */
+@SpringBootTest
+public class WinRecordPaginationTest {
+
+    @Autowired
+    private WinRecordService winRecordService;
+
+    @Autowired
+    private LotteryEventRepository lotteryEventRepository;
+
+    @Autowired
+    private LotteryPrizeRepository lotteryPrizeRepository;
+
+    @Autowired
+    private RecentWinsCache recentWinsCache;
+
+    @Autowired
+    private RedissonClient redissonClient;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private static final Long TEST_USER_ID = 990_201L;
+    private static final long CACHE_TIMEOUT_MILLIS = 5_000;
+
+    private Long eventId;
+    private LotteryPrize prize;
+
+    @BeforeEach
+    public void setup() {
+        LotteryEvent event = new LotteryEvent();
+        event.setName("Pagination Test Event");
+        event.setIsActive(true);
+        event.setSettingAmount(100);
+        event.setRemainAmount(100);
+        eventId = lotteryEventRepository.saveAndFlush(event).getId();
+
+        prize = new LotteryPrize();
+        prize.setLotteryEventId(eventId);
+        prize.setName("page_prize");
+        prize.setRate(new BigDecimal("0.50"));
+        prize.setAmount(10);
+        prize = lotteryPrizeRepository.saveAndFlush(prize);
+
+        // First page comes from the database, not from cached wins
+        redissonClient.getKeys().delete(recentWinsKey());
+    }
+
+    @AfterEach
+    public void cleanup() {
+        redissonClient.getKeys().delete(recentWinsKey());
+        jdbcTemplate.update("DELETE FROM win_record WHERE lottery_event_id = ?", eventId);
+        lotteryPrizeRepository.deleteById(prize.getId());
+        lotteryEventRepository.deleteById(eventId);
+    }
+
+    @Test
+    public void testGetUserWinRecordPage_WalksAllRecordsOnce() {
+        LocalDateTime base = LocalDateTime.of(2024, 1, 1, 10, 0, 0);
+        // Two records share the page boundary second, the cursor must keep them apart by id
+        List<LocalDateTime> createdTimes = List.of(
+                base, base.plusSeconds(1), base.plusSeconds(2), base.plusSeconds(2), base.plusSeconds(3));
+        for (LocalDateTime createdTime : createdTimes) {
+            jdbcTemplate.update("INSERT INTO win_record (lottery_event_id, uid, draw_prize_id, remain_prize_amount, "
+                    + "created_time) VALUES (?, ?, ?, ?, ?)", eventId, TEST_USER_ID, prize.getId(), 1,
+                    Timestamp.valueOf(createdTime));
+        }
+        List<Long> expectedIds = jdbcTemplate.queryForList(
+                "SELECT id FROM win_record WHERE uid = ? ORDER BY created_time DESC, id DESC", Long.class, TEST_USER_ID);
+
+        List<Integer> pageSizes = new ArrayList<>();
+        List<WinRecordResponse> walked = walkPages(pageSizes);
+
+        assertThat(pageSizes).containsExactly(2, 2, 1);
+        assertThat(walked).extracting(WinRecordResponse::getId).containsExactlyElementsOf(expectedIds);
+        assertThat(walked).extracting(WinRecordResponse::getPrizeName).containsOnly("page_prize");
+    }
+
+    @Test
+    public void testGetUserWinRecordPage_CachedSecondLargerThanPageIsNotSplit() throws InterruptedException {
+        LocalDateTime base = LocalDateTime.of(2024, 1, 1, 10, 0, 0);
+        jdbcTemplate.update("INSERT INTO win_record (lottery_event_id, uid, draw_prize_id, remain_prize_amount, "
+                + "created_time) VALUES (?, ?, ?, ?, ?)", eventId, TEST_USER_ID, prize.getId(), 1,
+                Timestamp.valueOf(base));
+        // A batch draw: five wins of one second, cached and not written yet, none of them with an id
+        List<DrawResult> batch = List.of(new DrawResult("page_prize", 9), new DrawResult("page_prize", 8),
+                new DrawResult("page_prize", 7), new DrawResult("page_prize", 6), new DrawResult("page_prize", 5));
+        recentWinsCache.record(eventId, TEST_USER_ID, batch, base.plusSeconds(1));
+        long deadline = System.currentTimeMillis() + CACHE_TIMEOUT_MILLIS;
+        while (recentWinsCache.getRecentWins(TEST_USER_ID).size() < batch.size()) {
+            assertThat(System.currentTimeMillis()).as("recent wins cached in time").isLessThan(deadline);
+            Thread.sleep(50);
+        }
+
+        List<Integer> pageSizes = new ArrayList<>();
+        List<WinRecordResponse> walked = walkPages(pageSizes);
+
+        // The second fills one oversized page, the stored record still follows it
+        assertThat(pageSizes).containsExactly(5, 1);
+        assertThat(walked).extracting(WinRecordResponse::getRemainPrizeAmount).containsExactly(5, 6, 7, 8, 9, 1);
+        assertThat(walked.get(5).getCreatedTime()).isEqualTo(base);
+    }
+
+    /**
+     * Every record of the user, two per page, following the cursors to the end
+     */
+    private List<WinRecordResponse> walkPages(List<Integer> pageSizes) {
+        List<WinRecordResponse> walked = new ArrayList<>();
+        String cursor = null;
+        do {
+            WinRecordPageResponse page = winRecordService.getUserWinRecordPage(TEST_USER_ID, cursor, 2);
+            walked.addAll(page.getRecords());
+            pageSizes.add(page.getRecords().size());
+            assertThat(page.getHasMore()).isEqualTo(page.getNextCursor() != null);
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+        return walked;
+    }
+
+    private String recentWinsKey() {
+        return String.format("lottery:user:%d:recent-wins", TEST_USER_ID);
+    }
+}
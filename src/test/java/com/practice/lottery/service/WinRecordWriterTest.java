@@ -0,0 +1,147 @@
+package com.practice.lottery.service;
+
+import com.practice.lottery.dao.entity.LotteryEvent;
+import com.practice.lottery.dao.entity.LotteryPrize;
+import com.practice.lottery.dao.repository.LotteryEventRepository;
+import com.practice.lottery.dao.repository.LotteryPrizeRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Writes a real JDBC batch through WinRecordWriter against the schema.sql tables
+ */
+@SpringBootTest
+public class WinRecordWriterTest {
+
+    @Autowired
+    private WinRecordWriter winRecordWriter;
+
+    @Autowired
+    private LotteryEventRepository lotteryEventRepository;
+
+    @Autowired
+    private LotteryPrizeRepository lotteryPrizeRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private Long eventId;
+    private LotteryPrize prize;
+
+    @BeforeEach
+    public void setup() {
+        LotteryEvent event = new LotteryEvent();
+        event.setName("Win Record Writer Test Event");
+        event.setIsActive(true);
+        event.setSettingAmount(100);
+        event.setRemainAmount(100);
+        eventId = lotteryEventRepository.saveAndFlush(event).getId();
+
+        prize = new LotteryPrize();
+        prize.setLotteryEventId(eventId);
+        prize.setName("writer_prize");
+        prize.setRate(new BigDecimal("0.50"));
+        prize.setAmount(10);
+        prize = lotteryPrizeRepository.saveAndFlush(prize);
+    }
+
+    @AfterEach
+    public void cleanup() {
+        jdbcTemplate.update("DELETE FROM win_record WHERE lottery_event_id = ?", eventId);
+        jdbcTemplate.update("DELETE FROM win_stats_hourly WHERE lottery_event_id = ?", eventId);
+        jdbcTemplate.update("DELETE FROM win_record_dead_letter WHERE lottery_event_id = ?", eventId);
+        lotteryPrizeRepository.deleteById(prize.getId());
+        lotteryEventRepository.deleteById(eventId);
+    }
+
+    @Test
+    public void testWriteBatch_InsertsAllRowsWithStats() {
+        LocalDateTime wonAt = LocalDateTime.of(2024, 1, 1, 10, 15, 30);
+        winRecordWriter.writeBatch(List.of(
+                new WinRecordWriter.PendingWin(eventId, 1L, "writer_prize", 9, wonAt,
+                        WinRecordWriter.PendingWin.NOT_JOURNALED, null),
+                new WinRecordWriter.PendingWin(eventId, 2L, "writer_prize", 8, wonAt.plusSeconds(1),
+                        WinRecordWriter.PendingWin.NOT_JOURNALED, null),
+                new WinRecordWriter.PendingWin(eventId, 3L, "writer_prize", 7, wonAt.plusSeconds(2),
+                        WinRecordWriter.PendingWin.NOT_JOURNALED, null)
+        ));
+
+        List<Map<String, Object>> rows = jdbcTemplate.queryForList(
+                "SELECT uid, draw_prize_id, remain_prize_amount FROM win_record "
+                        + "WHERE lottery_event_id = ? ORDER BY uid", eventId);
+        assertThat(rows).hasSize(3);
+        assertThat(rows).extracting(row -> ((Number) row.get("draw_prize_id")).longValue())
+                .containsOnly(prize.getId());
+        assertThat(rows).extracting(row -> ((Number) row.get("remain_prize_amount")).intValue())
+                .containsExactly(9, 8, 7);
+
+        LocalDateTime firstCreated = jdbcTemplate.queryForObject(
+                "SELECT MIN(created_time) FROM win_record WHERE lottery_event_id = ?", LocalDateTime.class, eventId);
+        assertThat(firstCreated).isEqualTo(wonAt);
+
+        Long winCount = jdbcTemplate.queryForObject(
+                "SELECT SUM(win_count) FROM win_stats_hourly WHERE lottery_event_id = ? AND draw_prize_id = ?",
+                Long.class, eventId, prize.getId());
+        assertThat(winCount).isEqualTo(3L);
+    }
+
+    @Test
+    public void testWriteBatch_RedeliveredJournalEntryWrittenOnce() {
+        LocalDateTime wonAt = LocalDateTime.of(2024, 1, 1, 11, 0, 0);
+        WinRecordWriter.PendingWin first = new WinRecordWriter.PendingWin(eventId, 1L, "writer_prize", 9, wonAt,
+                WinRecordWriter.PendingWin.NOT_JOURNALED, eventId + ":1704078000000-0");
+        WinRecordWriter.PendingWin second = new WinRecordWriter.PendingWin(eventId, 2L, "writer_prize", 8, wonAt,
+                WinRecordWriter.PendingWin.NOT_JOURNALED, eventId + ":1704078000000-1");
+
+        winRecordWriter.writeBatch(List.of(first));
+        // Consumer died before the ack: the first entry comes again together with a new one
+        winRecordWriter.writeBatch(List.of(first, second));
+
+        Long records = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM win_record WHERE lottery_event_id = ?", Long.class, eventId);
+        assertThat(records).isEqualTo(2L);
+
+        Long winCount = jdbcTemplate.queryForObject(
+                "SELECT SUM(win_count) FROM win_stats_hourly WHERE lottery_event_id = ? AND draw_prize_id = ?",
+                Long.class, eventId, prize.getId());
+        assertThat(winCount).isEqualTo(2L);
+    }
+
+    @Test
+    public void testWriteEachOrPark_UnknownPrizeParkedOthersWritten() {
+        LocalDateTime wonAt = LocalDateTime.of(2024, 1, 1, 12, 0, 0);
+        List<WinRecordWriter.PendingWin> wins = new ArrayList<>(List.of(
+                new WinRecordWriter.PendingWin(eventId, 1L, "writer_prize", 9, wonAt,
+                        WinRecordWriter.PendingWin.NOT_JOURNALED, null),
+                new WinRecordWriter.PendingWin(eventId, 2L, "deleted_prize", 4, wonAt,
+                        WinRecordWriter.PendingWin.NOT_JOURNALED, null),
+                new WinRecordWriter.PendingWin(eventId, 3L, "writer_prize", 8, wonAt,
+                        WinRecordWriter.PendingWin.NOT_JOURNALED, null)
+        ));
+
+        winRecordWriter.writeEachOrPark(wins);
+
+        assertThat(wins).isEmpty();
+        assertThat(jdbcTemplate.queryForList(
+                "SELECT uid FROM win_record WHERE lottery_event_id = ? ORDER BY uid", Long.class, eventId))
+                .containsExactly(1L, 3L);
+        List<Map<String, Object>> parked = jdbcTemplate.queryForList(
+                "SELECT uid, prize_name, error FROM win_record_dead_letter WHERE lottery_event_id = ?", eventId);
+        assertThat(parked).hasSize(1);
+        assertThat(((Number) parked.get(0).get("uid")).longValue()).isEqualTo(2L);
+        assertThat(parked.get(0).get("prize_name")).isEqualTo("deleted_prize");
+        assertThat((String) parked.get(0).get("error")).contains("Prize not found");
+    }
+}